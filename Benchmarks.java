@@ -0,0 +1,243 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/****
+ * Class: Benchmarks
+ * Description: micro benchmarks for the loading, split search, training, pruning and scoring hot paths, over the
+ * bundled data sets and row-replicated copies of them. Each benchmark is warmed up, then timed over several fixed
+ * length iterations and reported as ops/s with its spread, plus what a GC profiler reports - allocation rate,
+ * bytes allocated per op (summed over all threads, so the parallel parser is included), GC count and GC time
+ *
+ * Usage: java Benchmarks [benchmark name regex] [data sets, e.g. 0,1,5] [scales, e.g. 1,8]
+****/
+public class Benchmarks {
+    static final String[] BENCHMARKS = {"getData", "determineSplitClassification", "determineSplitRegression", "split",
+        "startGenerateTree", "pruneTree", "reducedErrorPrune", "evaluateTree", "compiledPredict"};
+    static final int WARMUP_ITERATIONS = 3;
+    static final int MEASURE_ITERATIONS = 5;
+    static final long ITERATION_NANOS = 500_000_000L;
+
+    static volatile double sink; // every op's result ends up here so the JIT can't drop the work
+
+    public static void main(String[] args) {
+        String filter = (args.length > 0) ? args[0] : ".*";
+        int[] dataSets = (args.length > 1) ? parseList(args[1]) : new int[] {0, 1, 2, 3, 4, 5, 6};
+        int[] scales = (args.length > 2) ? parseList(args[2]) : new int[] {1, 4};
+
+        System.out.printf("%-30s %4s %6s %14s %12s %10s %14s %8s %8s%n", "benchmark", "data", "scale", "ops/s", "+-", "alloc MB/s", "alloc B/op", "gc", "gc ms");
+        for (int dataSetNumber : dataSets) {
+            boolean[] categoricalAttribute = DataStream.getCatArray(dataSetNumber);
+            for (int scale : scales) {
+                Dataset data = replicate(DataStream.getData(dataSetNumber, 2), scale);
+                Dataset pruneData = replicate(DataStream.getData(dataSetNumber, 1), scale);
+                for (String benchmark : BENCHMARKS) {
+                    if (!benchmark.matches(filter) || (benchmark.equals("getData") && scale != 1)) {
+                        continue; // getData reads the file as it is
+                    }
+                    DoubleSupplier op = setup(benchmark, dataSetNumber, data, pruneData, categoricalAttribute);
+                    if (op != null) {
+                        report(benchmark, dataSetNumber, scale, measure(op));
+                    }
+                }
+            }
+        }
+    }
+
+    /****
+	 * Method: setup
+	 * Description: does the untimed preparation for one benchmark and returns the op to time, or null if the
+	 * benchmark doesn't apply to the data set (split search and pruning are classification or regression only)
+	****/
+    static DoubleSupplier setup(String benchmark, int dataSetNumber, Dataset data, Dataset pruneData, boolean[] categoricalAttribute) {
+        boolean isClassification = categoricalAttribute[categoricalAttribute.length - 1];
+        double errorThreshold = isClassification ? 0 : 1;
+        switch (benchmark) {
+            case "getData":
+                return () -> DataStream.getData(dataSetNumber, 0).rows;
+            case "determineSplitClassification":
+                if (!isClassification) {
+                    return null;
+                }
+                Node classificationRoot = new Node(data, categoricalAttribute);
+                return () -> classificationRoot.determineSplitClassification();
+            case "determineSplitRegression":
+                if (isClassification) {
+                    return null;
+                }
+                Node regressionRoot = new Node(data, categoricalAttribute);
+                return () -> regressionRoot.determineSplitRegression();
+            case "split":
+                // splitting the root again re-partitions the same rows, so every op does the same work
+                Node splitRoot = new Node(data, categoricalAttribute);
+                int splitIndex = isClassification ? splitRoot.determineSplitClassification() : splitRoot.determineSplitRegression();
+                if (splitIndex < 0) {
+                    return null;
+                }
+                return () -> {
+                    splitRoot.childNodes.clear();
+                    splitRoot.split(splitIndex);
+                    return splitRoot.childNodes.size();
+                };
+            case "startGenerateTree":
+                return () -> DecisionTrees.startGenerateTree(data, categoricalAttribute, errorThreshold).getRowCount();
+            case "pruneTree":
+            case "reducedErrorPrune":
+                if (!isClassification) {
+                    return null;
+                }
+                Node pruneRoot = DecisionTrees.startGenerateTree(data, categoricalAttribute, errorThreshold);
+                boolean onePass = benchmark.equals("reducedErrorPrune");
+                return () -> {
+                    unprune(pruneRoot);
+                    if (onePass) {
+                        DecisionTrees.reducedErrorPrune(pruneRoot, pruneData);
+                    } else {
+                        DecisionTrees.pruneTree(pruneRoot, pruneRoot, pruneData, dataSetNumber);
+                    }
+                    return pruneRoot.isPruned ? 1 : 0;
+                };
+            case "evaluateTree":
+                Node evaluateRoot = DecisionTrees.startGenerateTree(data, categoricalAttribute, errorThreshold);
+                double[] evaluateResults = new double[data.rows];
+                return () -> {
+                    DecisionTrees.evaluateTree(evaluateRoot, data, -1, null, evaluateResults);
+                    return evaluateResults[data.rows - 1];
+                };
+            case "compiledPredict":
+                CompiledTree compiled = CompiledTree.compile(DecisionTrees.startGenerateTree(data, categoricalAttribute, errorThreshold));
+                double[] compiledResults = new double[data.rows];
+                return () -> {
+                    compiled.predict(data, 0, data.rows, compiledResults, 0);
+                    return compiledResults[data.rows - 1];
+                };
+            default:
+                throw new IllegalArgumentException("unknown benchmark " + benchmark);
+        }
+    }
+
+    /****
+	 * Method: measure
+	 * Description: runs WARMUP_ITERATIONS untimed and MEASURE_ITERATIONS timed iterations of at least ITERATION_NANOS
+	 * each. Returns {ops/s mean, ops/s standard deviation, bytes allocated per op, allocation MB/s, GC count, GC ms}
+	****/
+    static double[] measure(DoubleSupplier op) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(op);
+        }
+        long allocatedBefore = allocatedBytes();
+        long[] gcBefore = gcTotals();
+        long totalOps = 0;
+        long totalNanos = 0;
+        double[] opsPerSecond = new double[MEASURE_ITERATIONS];
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long[] iteration = runIteration(op);
+            totalOps = totalOps + iteration[0];
+            totalNanos = totalNanos + iteration[1];
+            opsPerSecond[i] = iteration[0] * 1e9 / iteration[1];
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+        long[] gcAfter = gcTotals();
+
+        double mean = 0;
+        for (double x : opsPerSecond) {
+            mean = mean + x / MEASURE_ITERATIONS;
+        }
+        double variance = 0;
+        for (double x : opsPerSecond) {
+            variance = variance + (x - mean) * (x - mean) / (MEASURE_ITERATIONS - 1);
+        }
+        return new double[] {mean, Math.sqrt(variance), (double) allocated / totalOps, allocated / (totalNanos / 1e9) / (1 << 20),
+            gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]};
+    }
+
+    /****
+	 * Method: runIteration
+	 * Description: calls op until ITERATION_NANOS have passed - at least once. Returns {ops, elapsed nanoseconds}
+	****/
+    private static long[] runIteration(DoubleSupplier op) {
+        long ops = 0;
+        double result = 0;
+        long startTime = System.nanoTime();
+        long elapsed;
+        do {
+            result = result + op.getAsDouble();
+            ops++;
+            elapsed = System.nanoTime() - startTime;
+        } while (elapsed < ITERATION_NANOS);
+        sink = result;
+        return new long[] {ops, elapsed};
+    }
+
+    private static void report(String benchmark, int dataSetNumber, int scale, double[] result) {
+        System.out.printf("%-30s %4d %6d %14.3f %12.3f %10.1f %14.0f %8.0f %8.0f%n", benchmark, dataSetNumber, scale,
+                result[0], result[1], result[3], result[2], result[4], result[5]);
+    }
+
+    /****
+	 * Method: replicate
+	 * Description: a data set with every row repeated scale times, for measuring how the hot paths grow with row count
+	****/
+    static Dataset replicate(Dataset data, int scale) {
+        if (scale == 1) {
+            return data;
+        }
+        int[] rows = new int[data.rows * scale];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i % data.rows;
+        }
+        return data.subset(rows);
+    }
+
+    /****
+	 * Method: unprune
+	 * Description: clears the pruned flags of a tree so it can be pruned again
+	****/
+    private static void unprune(Node node) {
+        node.isPruned = false;
+        for (Node child : node.childNodes.values()) {
+            unprune(child);
+        }
+    }
+
+    /****
+	 * Method: allocatedBytes
+	 * Description: bytes allocated so far by all live threads, from the HotSpot thread MXBean
+	****/
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total = total + Math.max(bytes, 0); // -1 for threads that ended meanwhile
+        }
+        return total;
+    }
+
+    /****
+	 * Method: gcTotals
+	 * Description: {collections, collection milliseconds} summed over all collectors
+	****/
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] = totals[0] + Math.max(collector.getCollectionCount(), 0);
+            totals[1] = totals[1] + Math.max(collector.getCollectionTime(), 0);
+        }
+        return totals;
+    }
+
+    /****
+	 * Method: parseList
+	 * Description: parses a comma separated list of integers from the command line
+	****/
+    static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/****
+ * Class: ColumnFile
+ * Description: binary column-major data set file. The header holds the schema, the row count and the dictionaries
+ * of the encoded categorical attributes, followed by one block per attribute and then the labels. Numeric blocks
+ * are little-endian doubles, encoded blocks are 1 or 2 byte category codes, and every block starts on an 8 byte
+ * boundary. A mapped file hands out its columns as read-only views of the mapping, so nothing is parsed or copied
+ * until a caller asks for it
+ *
+ * Layout: int magic, int version, int rows, int attribute count, one byte per attribute plus one for the label
+ * (1 = categorical), zero padding to a multiple of 4, one int per attribute with its dictionary size (0 = stored as
+ * doubles, up to 256 = byte codes, more = short codes), zero padding to a multiple of 8, the dictionaries as doubles
+ * in attribute order, then the attribute blocks and the label block, each padded to a multiple of 8 bytes
+****/
+public class ColumnFile {
+    static final int MAGIC = 0x44544346; // "DTCF"
+    static final int VERSION = 2;
+    static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    final int rows;
+    final boolean[] categoricalAttribute; // same layout as DataStream.getCatArray - the last entry is the label
+    final DoubleBuffer[] columns; // read-only views of the mapped numeric attribute blocks - null for encoded attributes
+    final ByteBuffer[] byteCodes; // views of the mapped byte code blocks - null for other attributes
+    final ShortBuffer[] shortCodes; // views of the mapped short code blocks - null for other attributes
+    final double[][] dictionary; // sorted category values of each encoded attribute - null for other attributes
+    final DoubleBuffer labels;
+
+    ColumnFile(int rows, boolean[] categoricalAttribute, DoubleBuffer[] columns, ByteBuffer[] byteCodes, ShortBuffer[] shortCodes, double[][] dictionary, DoubleBuffer labels) {
+        this.rows = rows;
+        this.categoricalAttribute = categoricalAttribute;
+        this.columns = columns;
+        this.byteCodes = byteCodes;
+        this.shortCodes = shortCodes;
+        this.dictionary = dictionary;
+        this.labels = labels;
+    }
+
+    /****
+	 * Method: write
+	 * Description: writes a data set and its categorical attribute array to a column file. Categorical attributes
+	 * are dictionary encoded first if they aren't already
+	****/
+    public static void write(Dataset data, boolean[] categoricalAttribute, String writeFile) throws IOException {
+        int attributeCount = data.getAttributeCount();
+        if (categoricalAttribute.length != attributeCount + 1) {
+            throw new IllegalArgumentException("expected " + (attributeCount + 1) + " categorical flags, got " + categoricalAttribute.length);
+        }
+        data = data.encode(categoricalAttribute);
+
+        try (RandomAccessFile file = new RandomAccessFile(writeFile, "rw"); FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            int dictionaryDoubles = 0;
+            for (int j = 0; j < attributeCount; j++) {
+                if (data.isEncoded(j)) {
+                    dictionaryDoubles = dictionaryDoubles + data.getCardinality(j);
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(headerSize(attributeCount) + dictionaryDoubles * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(data.rows);
+            header.putInt(attributeCount);
+            for (int j = 0; j <= attributeCount; j++) {
+                header.put((byte) (categoricalAttribute[j] ? 1 : 0));
+            }
+            header.position(align(header.position(), 4));
+            for (int j = 0; j < attributeCount; j++) {
+                header.putInt(data.isEncoded(j) ? data.getCardinality(j) : 0);
+            }
+            header.position(headerSize(attributeCount));
+            for (int j = 0; j < attributeCount; j++) {
+                if (data.isEncoded(j)) {
+                    for (double category : data.dictionary[j]) {
+                        header.putDouble(category);
+                    }
+                }
+            }
+            header.position(0);
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int j = 0; j <= attributeCount; j++) {
+                int width = (j < attributeCount) ? columnWidth(data.isEncoded(j) ? data.getCardinality(j) : 0) : Double.BYTES;
+                int perBuffer = WRITE_BUFFER_BYTES / width;
+                int written = 0;
+                while (written < data.rows) {
+                    int count = Math.min(data.rows - written, perBuffer);
+                    buffer.clear();
+                    if (j == attributeCount) {
+                        buffer.asDoubleBuffer().put(data.labels, written, count);
+                    } else if (data.byteCodes[j] != null) {
+                        buffer.put(data.byteCodes[j], written, count);
+                    } else if (data.shortCodes[j] != null) {
+                        buffer.asShortBuffer().put(data.shortCodes[j], written, count);
+                    } else {
+                        buffer.asDoubleBuffer().put(data.attributes[j], written, count);
+                    }
+                    buffer.position(0);
+                    buffer.limit(count * width);
+                    writeFully(channel, buffer);
+                    written = written + count;
+                }
+                // pad the block to a multiple of 8 bytes
+                long padding = align((long) data.rows * width, 8) - (long) data.rows * width;
+                writeFully(channel, ByteBuffer.allocate((int) padding));
+            }
+        }
+    }
+
+    /****
+	 * Method: map
+	 * Description: memory maps a column file. Each column is mapped on its own, so a file can be larger than 2 GB as
+	 * long as a single column is not
+	****/
+    public static ColumnFile map(String readFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(readFile, "r"); FileChannel channel = file.getChannel()) {
+            ByteBuffer prefix = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, prefix, 0);
+            if (prefix.getInt(0) != MAGIC) {
+                throw new IOException(readFile + " is not a column file");
+            }
+            if (prefix.getInt(4) != VERSION) {
+                throw new IOException(readFile + " has column file version " + prefix.getInt(4) + ", expected " + VERSION + " - convert the data again");
+            }
+            int rows = prefix.getInt(8);
+            int attributeCount = prefix.getInt(12);
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize(attributeCount)).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            boolean[] categoricalAttribute = new boolean[attributeCount + 1];
+            for (int j = 0; j <= attributeCount; j++) {
+                categoricalAttribute[j] = header.get(16 + j) != 0;
+            }
+            int[] cardinality = new int[attributeCount];
+            int dictionaryDoubles = 0;
+            for (int j = 0; j < attributeCount; j++) {
+                cardinality[j] = header.getInt(align(16 + attributeCount + 1, 4) + j * 4);
+                dictionaryDoubles = dictionaryDoubles + cardinality[j];
+            }
+
+            ByteBuffer dictionaries = ByteBuffer.allocate(dictionaryDoubles * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, dictionaries, headerSize(attributeCount));
+            dictionaries.position(0);
+            double[][] dictionary = new double[attributeCount][];
+            for (int j = 0; j < attributeCount; j++) {
+                if (cardinality[j] > 0) {
+                    dictionary[j] = new double[cardinality[j]];
+                    dictionaries.asDoubleBuffer().get(dictionary[j]);
+                    dictionaries.position(dictionaries.position() + cardinality[j] * Double.BYTES);
+                }
+            }
+
+            long expectedSize = headerSize(attributeCount) + (long) dictionaryDoubles * Double.BYTES + align((long) rows * Double.BYTES, 8);
+            for (int j = 0; j < attributeCount; j++) {
+                expectedSize = expectedSize + align((long) rows * columnWidth(cardinality[j]), 8);
+            }
+            if (channel.size() < expectedSize) {
+                throw new IOException(readFile + " is truncated - expected " + expectedSize + " bytes, found " + channel.size());
+            }
+
+            DoubleBuffer[] columns = new DoubleBuffer[attributeCount];
+            ByteBuffer[] byteCodes = new ByteBuffer[attributeCount];
+            ShortBuffer[] shortCodes = new ShortBuffer[attributeCount];
+            DoubleBuffer labels = null;
+            long offset = headerSize(attributeCount) + (long) dictionaryDoubles * Double.BYTES;
+            for (int j = 0; j <= attributeCount; j++) {
+                int width = (j < attributeCount) ? columnWidth(cardinality[j]) : Double.BYTES;
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * width);
+                block.order(ByteOrder.LITTLE_ENDIAN);
+                if (j == attributeCount) {
+                    labels = block.asDoubleBuffer();
+                } else if (width == 1) {
+                    byteCodes[j] = block;
+                } else if (width == 2) {
+                    shortCodes[j] = block.asShortBuffer();
+                } else {
+                    columns[j] = block.asDoubleBuffer();
+                }
+                offset = offset + align((long) rows * width, 8);
+            }
+            // the mappings stay valid after the channel is closed
+            return new ColumnFile(rows, categoricalAttribute, columns, byteCodes, shortCodes, dictionary, labels);
+        }
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getAttributeCount() {
+        return columns.length;
+    }
+
+    public boolean[] getCatArray() {
+        return categoricalAttribute.clone();
+    }
+
+    public boolean isEncoded(int column) {
+        return dictionary[column] != null;
+    }
+
+    /****
+	 * Method: getColumn
+	 * Description: view of one numeric attribute column straight over the mapping. Each call returns its own view, so
+	 * callers can move its position without affecting each other
+	****/
+    public DoubleBuffer getColumn(int column) {
+        if (columns[column] == null) {
+            throw new IllegalArgumentException("attribute " + column + " is dictionary encoded - read it with getByteCodes or getShortCodes");
+        }
+        return columns[column].duplicate();
+    }
+
+    /****
+	 * Method: getByteCodes
+	 * Description: view of the category codes of an encoded attribute with at most 256 categories, read as unsigned.
+	 * null if the attribute isn't stored that way
+	****/
+    public ByteBuffer getByteCodes(int column) {
+        return (byteCodes[column] == null) ? null : byteCodes[column].duplicate();
+    }
+
+    /****
+	 * Method: getShortCodes
+	 * Description: view of the category codes of an encoded attribute with more than 256 categories, read as
+	 * unsigned. null if the attribute isn't stored that way
+	****/
+    public ShortBuffer getShortCodes(int column) {
+        return (shortCodes[column] == null) ? null : shortCodes[column].duplicate();
+    }
+
+    public double[] getDictionary(int column) {
+        return dictionary[column];
+    }
+
+    public DoubleBuffer getLabels() {
+        return labels.duplicate();
+    }
+
+    /****
+	 * Method: toDataset
+	 * Description: bulk copies the mapped columns into a Dataset for the tree builder, which works on arrays.
+	 * Encoded attributes stay encoded
+	****/
+    public Dataset toDataset() {
+        int attributeCount = columns.length;
+        double[][] attributes = new double[attributeCount][];
+        byte[][] codeBytes = new byte[attributeCount][];
+        short[][] codeShorts = new short[attributeCount][];
+        for (int j = 0; j < attributeCount; j++) {
+            if (byteCodes[j] != null) {
+                codeBytes[j] = new byte[rows];
+                getByteCodes(j).get(codeBytes[j]);
+            } else if (shortCodes[j] != null) {
+                codeShorts[j] = new short[rows];
+                getShortCodes(j).get(codeShorts[j]);
+            } else {
+                attributes[j] = new double[rows];
+                getColumn(j).get(attributes[j]);
+            }
+        }
+        double[] labelValues = new double[rows];
+        getLabels().get(labelValues);
+        return new Dataset(attributes, codeBytes, codeShorts, dictionary.clone(), labelValues);
+    }
+
+    /****
+	 * Method: main
+	 * Description: converts one of the bundled data sets to a column file - java ColumnFile <data set number> <output file>
+	****/
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: java ColumnFile <data set number> <output file>");
+            System.exit(1);
+        }
+        int dataSetNumber = Integer.parseInt(args[0]);
+        DataStream.convertToBinary(dataSetNumber, args[1]);
+        ColumnFile converted = map(args[1]);
+        System.out.println("wrote " + converted.getRowCount() + " rows x " + converted.getAttributeCount() + " attributes to " + args[1]);
+    }
+
+    private static int headerSize(int attributeCount) {
+        return align(align(16 + attributeCount + 1, 4) + attributeCount * 4, 8);
+    }
+
+    private static long align(long size, int alignment) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    private static int align(int size, int alignment) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    /****
+	 * Method: columnWidth
+	 * Description: bytes per row of an attribute block with the given dictionary size (0 = numeric)
+	****/
+    private static int columnWidth(int cardinality) {
+        if (cardinality == 0) {
+            return Double.BYTES;
+        }
+        return (cardinality <= Dataset.MAX_BYTE_CATEGORIES) ? 1 : 2;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of column file");
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/****
+ * Class: CompiledTree
+ * Description: a trained tree flattened into primitive arrays for scoring. Nodes are numbered breadth first so the top
+ * levels sit together at the front of each array. Predictions match DecisionTrees.evaluateTree, including the
+ * mostFrequentClass fallback for unseen category values and pruned nodes, without walking Node objects or boxing keys
+****/
+public class CompiledTree {
+    static final byte LEAF = 0;
+    static final byte NUMERIC = 1;
+    static final byte CATEGORICAL = 2;
+    static final int TILE_SIZE = 256; // rows that walk the tree together in the batch predict methods
+    static final int[] SAME_CODES = new int[0]; // codeMaps entry for a column whose dictionary matches categories - its codes index childTable as they are
+
+    final byte[] kind; // LEAF, NUMERIC or CATEGORICAL split
+    final int[] feature; // attribute a split node tests
+    final double[] threshold; // numeric splits - values <= threshold go to left
+    final int[] left; // numeric splits: left child. categorical splits: offset of the node's entries in childTable
+    final int[] right; // numeric splits: right child
+    final double[] value; // leaves: the prediction. categorical splits: the prediction for a category with no child
+    final int[] childTable; // categorical splits - child for each category code of the attribute, -1 if no child
+    final double[][] categories; // attribute -> sorted category values used by any split on it, the index is the category code
+
+    CompiledTree(byte[] kind, int[] feature, double[] threshold, int[] left, int[] right, double[] value, int[] childTable, double[][] categories) {
+        this.kind = kind;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.value = value;
+        this.childTable = childTable;
+        this.categories = categories;
+    }
+
+    /****
+	 * Method: compile
+	 * Description: flattens a trained (and possibly pruned) tree. A pruned node becomes a leaf predicting what
+	 * evaluateTree falls back to there - the mostFrequentClass of the closest categorical split above it, or of the root
+	****/
+    public static CompiledTree compile(Node root) {
+        boolean[] categoricalAttribute = root.categoricalAttribute;
+
+        // number the nodes breadth first, and remember the fallback value each one inherits from above
+        List<Node> nodes = new ArrayList<Node>();
+        List<Double> inherited = new ArrayList<Double>();
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        nodes.add(root);
+        inherited.add(root.mostFrequentClass);
+        queue.add(0);
+        List<List<Double>> categoryLists = new ArrayList<List<Double>>();
+        for (int j = 0; j < categoricalAttribute.length - 1; j++) {
+            categoryLists.add(new ArrayList<Double>());
+        }
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+            Node node = nodes.get(id);
+            if (node.isLeaf || node.isPruned) {
+                continue;
+            }
+            double childFallback = inherited.get(id);
+            if (categoricalAttribute[node.splitIndex]) {
+                childFallback = node.mostFrequentClass;
+            }
+            for (Map.Entry<Double, Node> entry : node.childNodes.entrySet()) {
+                if (categoricalAttribute[node.splitIndex] && !categoryLists.get(node.splitIndex).contains(entry.getKey())) {
+                    categoryLists.get(node.splitIndex).add(entry.getKey());
+                }
+                nodes.add(entry.getValue());
+                inherited.add(childFallback);
+                queue.add(nodes.size() - 1);
+            }
+        }
+
+        double[][] categories = new double[categoryLists.size()][];
+        for (int j = 0; j < categories.length; j++) {
+            categories[j] = new double[categoryLists.get(j).size()];
+            for (int k = 0; k < categories[j].length; k++) {
+                categories[j][k] = categoryLists.get(j).get(k);
+            }
+            Arrays.sort(categories[j]);
+        }
+
+        int count = nodes.size();
+        byte[] kind = new byte[count];
+        int[] feature = new int[count];
+        double[] threshold = new double[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        double[] value = new double[count];
+        int tableSize = 0;
+        for (Node node : nodes) {
+            if (!node.isLeaf && !node.isPruned && categoricalAttribute[node.splitIndex]) {
+                tableSize = tableSize + categories[node.splitIndex].length;
+            }
+        }
+        int[] childTable = new int[tableSize];
+        Arrays.fill(childTable, -1);
+
+        // children were queued in the same order they are visited here, so the next unassigned number is the first child
+        int nextChild = 1;
+        int nextTableEntry = 0;
+        for (int id = 0; id < count; id++) {
+            Node node = nodes.get(id);
+            if (node.isPruned) {
+                kind[id] = LEAF;
+                value[id] = inherited.get(id);
+            } else if (node.isLeaf) {
+                kind[id] = LEAF;
+                value[id] = node.leafValue;
+            } else if (categoricalAttribute[node.splitIndex]) {
+                kind[id] = CATEGORICAL;
+                feature[id] = node.splitIndex;
+                value[id] = node.mostFrequentClass;
+                left[id] = nextTableEntry;
+                for (Map.Entry<Double, Node> entry : node.childNodes.entrySet()) {
+                    int code = Arrays.binarySearch(categories[node.splitIndex], entry.getKey());
+                    childTable[nextTableEntry + code] = nextChild;
+                    nextChild++;
+                }
+                nextTableEntry = nextTableEntry + categories[node.splitIndex].length;
+            } else {
+                kind[id] = NUMERIC;
+                feature[id] = node.splitIndex;
+                threshold[id] = node.splitValue;
+                for (Map.Entry<Double, Node> entry : node.childNodes.entrySet()) {
+                    if (entry.getKey() == 0.0) {
+                        left[id] = nextChild;
+                    } else {
+                        right[id] = nextChild;
+                    }
+                    nextChild++;
+                }
+            }
+        }
+
+        return new CompiledTree(kind, feature, threshold, left, right, value, childTable, categories);
+    }
+
+    public int getNodeCount() {
+        return kind.length;
+    }
+
+    /****
+	 * Method: predict
+	 * Description: prediction for one row of a column-major data set
+	****/
+    public double predict(Dataset data, int row) {
+        int node = 0;
+        while (true) {
+            byte nodeKind = kind[node];
+            if (nodeKind == LEAF) {
+                return value[node];
+            }
+            double x = data.value(feature[node], row);
+            if (nodeKind == NUMERIC) {
+                node = (x <= threshold[node]) ? left[node] : right[node];
+            } else {
+                int child = categoryChild(node, x);
+                if (child < 0) {
+                    return value[node];
+                }
+                node = child;
+            }
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: prediction for one row given as an array of attribute values
+	****/
+    public double predict(double[] attributes) {
+        int node = 0;
+        int next = step(node, attributes);
+        while (next >= 0) {
+            node = next;
+            next = step(node, attributes);
+        }
+        return value[node];
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for rows [from, to) of a column-major data set. The prediction for row from + k is
+	 * written to out[outOffset + k]
+	****/
+    public void predict(Dataset data, int from, int to, double[] out, int outOffset) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileRow = new int[TILE_SIZE];
+        int[] tileOut = new int[TILE_SIZE];
+        int[] tileNode = new int[TILE_SIZE];
+        int[][] codeMaps = codeMaps(data);
+        for (int tileStart = from; tileStart < to; tileStart = tileStart + TILE_SIZE) {
+            int n = Math.min(TILE_SIZE, to - tileStart);
+            for (int i = 0; i < n; i++) {
+                tileRow[i] = tileStart + i;
+                tileOut[i] = outOffset + (tileStart - from) + i;
+            }
+            predictTile(data, codeMaps, tileRow, tileOut, tileNode, n, out);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = to - from;
+            event.nodes = getNodeCount();
+            event.source = "CompiledTree";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for the listed rows of a column-major data set. The prediction for row rows[k] is
+	 * written to out[rows[k]], so out is indexed like the data set
+	****/
+    public void predict(Dataset data, int[] rows, double[] out) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileRow = new int[TILE_SIZE];
+        int[] tileNode = new int[TILE_SIZE];
+        int[][] codeMaps = codeMaps(data);
+        for (int tileStart = 0; tileStart < rows.length; tileStart = tileStart + TILE_SIZE) {
+            int n = Math.min(TILE_SIZE, rows.length - tileStart);
+            System.arraycopy(rows, tileStart, tileRow, 0, n);
+            predictTile(data, codeMaps, tileRow, tileRow, tileNode, n, out);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = rows.length;
+            event.nodes = getNodeCount();
+            event.source = "CompiledTree";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for the data set rows listed in rows[from, to). The prediction for row rows[from + k]
+	 * is written to out[outOffset + k], so out is packed like the list
+	****/
+    public void predict(Dataset data, int[] rows, int from, int to, double[] out, int outOffset) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileRow = new int[TILE_SIZE];
+        int[] tileOut = new int[TILE_SIZE];
+        int[] tileNode = new int[TILE_SIZE];
+        int[][] codeMaps = codeMaps(data);
+        for (int tileStart = from; tileStart < to; tileStart = tileStart + TILE_SIZE) {
+            int n = Math.min(TILE_SIZE, to - tileStart);
+            System.arraycopy(rows, tileStart, tileRow, 0, n);
+            for (int i = 0; i < n; i++) {
+                tileOut[i] = outOffset + (tileStart - from) + i;
+            }
+            predictTile(data, codeMaps, tileRow, tileOut, tileNode, n, out);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = to - from;
+            event.nodes = getNodeCount();
+            event.source = "CompiledTree";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for rows [from, to) of row-major data (attribute values only, no label). The
+	 * prediction for rows[from + k] is written to out[outOffset + k]
+	****/
+    public void predict(double[][] rows, int from, int to, double[] out, int outOffset) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileNode = new int[TILE_SIZE];
+        for (int tileStart = from; tileStart < to; tileStart = tileStart + TILE_SIZE) {
+            int n = Math.min(TILE_SIZE, to - tileStart);
+            for (int i = 0; i < n; i++) {
+                tileNode[i] = 0;
+            }
+
+            // move every row of the tile down one level per pass, so the nodes near the root are reused while hot
+            boolean active = true;
+            while (active) {
+                active = false;
+                for (int i = 0; i < n; i++) {
+                    int node = tileNode[i];
+                    if (node < 0) {
+                        continue; // already scored
+                    }
+                    int next = step(node, rows[tileStart + i]);
+                    if (next < 0) {
+                        out[outOffset + (tileStart - from) + i] = value[node];
+                    } else {
+                        active = true;
+                    }
+                    tileNode[i] = next;
+                }
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = to - from;
+            event.nodes = getNodeCount();
+            event.source = "CompiledTree";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: predictTile
+	 * Description: scores up to TILE_SIZE rows of column-major data level by level. Row tileRow[i] is written to
+	 * out[tileOut[i]]. Categorical splits on encoded columns look the row's category code up through codeMaps
+	****/
+    private void predictTile(Dataset data, int[][] codeMaps, int[] tileRow, int[] tileOut, int[] tileNode, int n, double[] out) {
+        for (int i = 0; i < n; i++) {
+            tileNode[i] = 0;
+        }
+
+        // move every row of the tile down one level per pass, so the nodes near the root are reused while hot
+        boolean active = true;
+        while (active) {
+            active = false;
+            for (int i = 0; i < n; i++) {
+                int node = tileNode[i];
+                if (node < 0) {
+                    continue; // already scored
+                }
+                byte nodeKind = kind[node];
+                int next = -1;
+                if (nodeKind == NUMERIC) {
+                    next = (data.value(feature[node], tileRow[i]) <= threshold[node]) ? left[node] : right[node];
+                } else if (nodeKind == CATEGORICAL) {
+                    int[] codeMap = codeMaps[feature[node]];
+                    if (codeMap == null) {
+                        next = categoryChild(node, data.value(feature[node], tileRow[i]));
+                    } else {
+                        int code = data.code(feature[node], tileRow[i]);
+                        if (codeMap != SAME_CODES) {
+                            code = codeMap[code];
+                        }
+                        next = (code < 0) ? -1 : childTable[left[node] + code];
+                    }
+                }
+                if (next < 0) {
+                    out[tileOut[i]] = value[node];
+                } else {
+                    active = true;
+                }
+                tileNode[i] = next;
+            }
+        }
+    }
+
+    /****
+	 * Method: codeMaps
+	 * Description: for each attribute of a column-major data set, how its category codes translate to the codes of
+	 * categories. SAME_CODES when the column's dictionary is categories itself, so codes index childTable directly, a
+	 * code -> code table (-1 for categories no split uses) when the dictionaries differ, and null for columns that aren't
+	 * encoded or aren't split on - those are looked up by value
+	****/
+    private int[][] codeMaps(Dataset data) {
+        int[][] codeMaps = new int[categories.length][];
+        for (int column = 0; column < categories.length; column++) {
+            if (categories[column].length == 0 || !data.isEncoded(column)) {
+                continue;
+            }
+            double[] dictionary = data.dictionary[column];
+            if (Arrays.equals(dictionary, categories[column])) {
+                codeMaps[column] = SAME_CODES;
+                continue;
+            }
+            int[] codeMap = new int[dictionary.length];
+            for (int code = 0; code < dictionary.length; code++) {
+                codeMap[code] = Arrays.binarySearch(categories[column], dictionary[code]);
+                if (codeMap[code] < 0) {
+                    codeMap[code] = -1;
+                }
+            }
+            codeMaps[column] = codeMap;
+        }
+        return codeMaps;
+    }
+
+    /****
+	 * Method: step
+	 * Description: the child a row moves to from a node, or -1 if the row stops there with value[node] as its prediction
+	****/
+    private int step(int node, double[] attributes) {
+        byte nodeKind = kind[node];
+        if (nodeKind == NUMERIC) {
+            return (attributes[feature[node]] <= threshold[node]) ? left[node] : right[node];
+        } else if (nodeKind == CATEGORICAL) {
+            return categoryChild(node, attributes[feature[node]]);
+        }
+        return -1;
+    }
+
+    /****
+	 * Method: categoryChild
+	 * Description: child of a categorical split for an attribute value, or -1 if the value has no child there. Used for
+	 * values that aren't dictionary codes - row arrays and unencoded columns
+	****/
+    private int categoryChild(int node, double x) {
+        int code = Arrays.binarySearch(categories[feature[node]], x);
+        if (code < 0) {
+            return -1;
+        }
+        return childTable[left[node] + code];
+    }
+}
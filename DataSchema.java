@@ -0,0 +1,110 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/****
+ * Class: DataSchema
+ * Description: describes how to read one comma separated data file - which output column each input field goes to,
+ * how text fields map to numbers, how many header lines to skip and the missing value marker. Input fields that are
+ * never declared are dropped. The last output column is the label
+****/
+public class DataSchema {
+    static final byte DROP = 0;
+    static final byte NUMERIC = 1;
+    static final byte CATEGORY = 2;
+    static final byte ONE_HOT = 3;
+
+    final String readFile;
+    final int columnCount; // output columns, label included
+    int headerLines = 0;
+    byte[] missingMarker = null; // numeric and category fields equal to this are set to missingValue
+    double missingValue = 0;
+    byte[] fieldType = new byte[0]; // input field -> DROP, NUMERIC, CATEGORY or ONE_HOT
+    int[] fieldColumn = new int[0]; // input field -> output column (the first of its columns for ONE_HOT)
+    byte[][][] categoryNames = new byte[0][][]; // input field -> category names, as bytes so rows are matched without Strings
+    double[][] categoryValues = new double[0][]; // input field -> value for each category name
+
+    DataSchema(String readFile, int columnCount) {
+        this.readFile = readFile;
+        this.columnCount = columnCount;
+    }
+
+    public DataSchema skipHeader(int lines) {
+        headerLines = lines;
+        return this;
+    }
+
+    public DataSchema missing(String marker, double value) {
+        missingMarker = marker.getBytes(StandardCharsets.ISO_8859_1);
+        missingValue = value;
+        return this;
+    }
+
+    public DataSchema numeric(int field, int column) {
+        return declare(field, NUMERIC, column, null, null);
+    }
+
+    /****
+	 * Method: numeric
+	 * Description: declares input fields firstField..lastField (inclusive) as numeric, in consecutive output columns
+	****/
+    public DataSchema numeric(int firstField, int lastField, int firstColumn) {
+        for (int field = firstField; field <= lastField; field++) {
+            numeric(field, firstColumn + field - firstField);
+        }
+        return this;
+    }
+
+    /****
+	 * Method: category
+	 * Description: declares a text field whose categories are numbered in the order given, starting at 0
+	****/
+    public DataSchema category(int field, int column, String... names) {
+        double[] values = new double[names.length];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = k;
+        }
+        return category(field, column, names, values);
+    }
+
+    public DataSchema category(int field, int column, String[] names, double[] values) {
+        return declare(field, CATEGORY, column, names, values);
+    }
+
+    /****
+	 * Method: oneHot
+	 * Description: declares a text field that becomes one 0/1 column per category, starting at firstColumn
+	****/
+    public DataSchema oneHot(int field, int firstColumn, String... names) {
+        return declare(field, ONE_HOT, firstColumn, names, null);
+    }
+
+    public int getFieldCount() {
+        return fieldType.length;
+    }
+
+    private DataSchema declare(int field, byte type, int column, String[] names, double[] values) {
+        int width = (type == ONE_HOT) ? names.length : 1;
+        if (column < 0 || column + width > columnCount) {
+            throw new IllegalArgumentException("field " + field + " maps outside the " + columnCount + " output columns");
+        }
+        if (names != null && values != null && names.length != values.length) {
+            throw new IllegalArgumentException("field " + field + " has " + names.length + " category names but " + values.length + " values");
+        }
+        if (field >= fieldType.length) {
+            fieldType = Arrays.copyOf(fieldType, field + 1);
+            fieldColumn = Arrays.copyOf(fieldColumn, field + 1);
+            categoryNames = Arrays.copyOf(categoryNames, field + 1);
+            categoryValues = Arrays.copyOf(categoryValues, field + 1);
+        }
+        fieldType[field] = type;
+        fieldColumn[field] = column;
+        if (names != null) {
+            categoryNames[field] = new byte[names.length][];
+            for (int k = 0; k < names.length; k++) {
+                categoryNames[field][k] = names[k].getBytes(StandardCharsets.ISO_8859_1);
+            }
+        }
+        categoryValues[field] = values;
+        return this;
+    }
+}
@@ -1,9 +1,23 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class DataStream {
+    static final long MIN_CHUNK_BYTES = 1 << 20; // files are cut into chunks of at least this size, one per pool thread
+    static final long MAX_CHUNK_BYTES = 1 << 30; // each chunk is mapped on its own, so it has to stay under 2 GB
+    static final int MAX_STRATA = 1024; // labels with more distinct values than this are sorted to find them
+    static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
     // tuning = 0 => full set, 1 => 20%, 2 => 80%
-    public static double[][] getData(int dataSetNumber, int tuning) {
+    public static Dataset getData(int dataSetNumber, int tuning) {
         // test data example from lecture
         if (dataSetNumber == 6) {
             double[][] data = {
@@ -22,85 +36,89 @@ public class DataStream {
                 {1, 0, 1, 0, 1},
                 {2, 1, 0, 1, 0},
             };
-            return data;
+            return Dataset.fromRows(data).encode(getCatArray(dataSetNumber));
         }
 
-        // set data size and input file based on data
-		int columnCount = getColumnCount(dataSetNumber);
-		int rowCount = getRowCount(dataSetNumber);
-		String readFile = getReadFile(dataSetNumber);
-        
-        double[][] inputData = new double[rowCount][columnCount];
-
-
         // only standardize regression set
         boolean standardization = false;
-        
-        File readFileValid = new File(readFile);
+
+        DataSchema schema = getSchema(dataSetNumber);
+        File readFileValid = new File(schema.readFile);
 		if (!readFileValid.canRead())
 		{
 			System.out.println("cannot read input");
 			System.exit(1);
 		}
-		BufferedReader inputFile = null;
-		// read data from input array, parse, and put into inputData
-		try 
+		Dataset inputData = null;
+		try
 		{
-			// read data from file
-			inputFile = new BufferedReader(new FileReader(readFile));
-			for (int i = 0; i < rowCount; i++) {
-				String currentLine = inputFile.readLine();
-				if (dataSetNumber == 5 && i == 0) { // throw away first line in fire data
-					currentLine = inputFile.readLine();
-				}
-				double[] inputLineClean= cleanRow(dataSetNumber, currentLine);
-				for (int j = 0; j <= (columnCount - 1); j++) {
-					inputData[i][j] = inputLineClean[j];
-				}
-			}
-
-			// perform action on the data
-			fixMissingValues(dataSetNumber, inputData);
-
-			if (standardization) {
-				standardizeData(dataSetNumber, inputData);
-			}
-
-			
-
-
+			inputData = readData(schema);
 		}
 		catch (IOException except)
 		{
 			System.exit(1); // don't keep going if there's a problem reading the file.
 		}
 
-		// close files
-		try
-		{
-			inputFile.close();
-		}
-		catch (Exception except)
-		{
-			System.exit(1);
-		}
+		// perform action on the data
+		fixMissingValues(dataSetNumber, inputData.attributes);
 
-        // pull out tuning data
-        int tuningSize = (rowCount / 5) + 1; // 20%
-        double[][] tuningData = new double[tuningSize][columnCount];
-        double[][] testData = new double[rowCount - tuningSize][columnCount];
+		if (standardization) {
+			standardizeData(inputData.attributes);
+		}
 
+		// store categorical attributes as codes into a per-column dictionary
+		inputData = inputData.encode(getCatArray(dataSetNumber));
 
         // return full set, tuning set, or test set (based on tuning)
         if (tuning == 0) {
             return inputData;
         }
         if (tuning == 1) {
-            tuningData = splitData(dataSetNumber, inputData, true);
-            return tuningData;
+            return splitData(inputData, true);
         } else {
-            testData = splitData(dataSetNumber, inputData, false);
-            return testData;
+            return splitData(inputData, false);
+        }
+    }
+
+    /****
+	 * Method: getData
+	 * Description: loads a data set from a column file written by convertToBinary. tuning works as for the numbered
+	 * data sets: 0 => full set, 1 => 20%, 2 => 80%
+	****/
+    public static Dataset getData(String binaryFile, int tuning) {
+        Dataset inputData = mapData(binaryFile).toDataset();
+        if (tuning == 0) {
+            return inputData;
+        }
+        return splitData(inputData, tuning == 1);
+    }
+
+    /****
+	 * Method: mapData
+	 * Description: memory maps a column file. The columns are read-only views of the file, so only the pages a
+	 * caller touches are read from disk
+	****/
+    public static ColumnFile mapData(String binaryFile) {
+        try {
+            return ColumnFile.map(binaryFile);
+        } catch (IOException except) {
+            System.out.println("cannot read input: " + except.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /****
+	 * Method: convertToBinary
+	 * Description: parses one of the text data sets (with missing values fixed) and writes it as a column file,
+	 * together with its categorical attribute array
+	****/
+    public static void convertToBinary(int dataSetNumber, String binaryFile) {
+        try {
+            ColumnFile.write(getData(dataSetNumber, 0), getCatArray(dataSetNumber), binaryFile);
+        } catch (IOException except) {
+            System.out.println("cannot write output: " + except.getMessage());
+            System.exit(1);
         }
     }
 
@@ -134,17 +152,17 @@ public class DataStream {
 	 * Method: calculate performance
 	 * Description: takes results and original data and determines performance of results. 
 	****/
-	public static double calculatePerformance(int dataSetNumber, double[] results, double[][] data) {
+	public static double calculatePerformance(int dataSetNumber, double[] results, Dataset data) {
 		boolean classifcation = getClassification(dataSetNumber);
 
-		int rows = data.length; //getRowCount(dataSetNumber);
-		int yColumn = getColumnCount(dataSetNumber) - 1;
+		int rows = data.rows; //getRowCount(dataSetNumber);
+		double[] labels = data.labels;
 
 		// classification accuracy
 		if (classifcation) {
 			int correctCount = 0;
 			for (int i = 0; i < rows; i++) {
-				if (results[i] == data[i][yColumn]) {
+				if (results[i] == labels[i]) {
 					correctCount++;
 				}
 			}
@@ -155,7 +173,7 @@ public class DataStream {
 			// mean squared error
 			double meanSquared = 0;
 			for (int i = 0; i < rows; i++) {
-				meanSquared = meanSquared + ((data[i][yColumn] - results[i]) * (data[i][yColumn] - results[i]));
+				meanSquared = meanSquared + ((labels[i] - results[i]) * (labels[i] - results[i]));
 			}
 			double meanSquaredError = meanSquared / rows;
 			return meanSquaredError;
@@ -164,248 +182,377 @@ public class DataStream {
 
     /****
 	 * Method: kFold
-	 * Description: bins data into 5 folds to cross validation
+	 * Description: bins data into k folds for cross validation, stratified by label - see stratifiedFolds
 	****/
-	public static int[] getKFold(int dataSetNumber, int k, double[][] data) {
-		int rows = data.length; //getRowCount(dataSetNumber);
-		int yColumn = getColumnCount(dataSetNumber) - 1;
-		double[][] sortedY = new double[rows][2]; // y value, original row index
+	public static int[] getKFold(int dataSetNumber, int k, Dataset data) {
+		return stratifiedFolds(data.labels, k, null);
+    }
+
+    /****
+	 * Method: stratifiedFolds
+	 * Description: assigns each row a fold in 0..k-1. Rows are dealt round robin in label order, so every fold gets
+	 * its share of each label and of the label range. With random null rows with equal labels are dealt in row order,
+	 * otherwise in an order shuffled with random
+	****/
+	public static int[] stratifiedFolds(double[] labels, int k, SplittableRandom random) {
+		int[] order = labelOrder(labels, random);
+		int[] kFoldArray = new int[labels.length];
+		for (int i = 0; i < order.length; i++) {
+			kFoldArray[order[i]] = i % k;
+		}
+		return kFoldArray;
+	}
 
-		// sort y values
+    /****
+	 * Method: labelOrder
+	 * Description: the rows sorted by label, with rows of equal label in row order (random null) or shuffled. The rows
+	 * are counted into one bucket per distinct label, so there is no comparison sort over the rows - only the
+	 * distinct labels are kept sorted
+	****/
+	static int[] labelOrder(double[] labels, SplittableRandom random) {
+		int rows = labels.length;
+		double[] distinct = distinctLabels(labels);
+		int[] stratum = new int[rows];
+		int[] next = new int[distinct.length + 1]; // rows counted per label, then where each label's rows start
 		for (int i = 0; i < rows; i++) {
-			sortedY[i][0] = data[i][yColumn];
-			sortedY[i][1] = i;
+			stratum[i] = Arrays.binarySearch(distinct, labels[i]);
+			next[stratum[i] + 1]++;
+		}
+		for (int s = 1; s < next.length; s++) {
+			next[s] = next[s] + next[s - 1];
 		}
-		Arrays.sort(sortedY, (row1, row2) -> Double.compare(row1[0], row2[0]));
-		
-		int[] kFoldArray = new int[rows];
+
+		int[] order = new int[rows];
 		for (int i = 0; i < rows; i++) {
-			int bin = i % k;
-			int rowIndex = (int) sortedY[i][1];
-			kFoldArray[rowIndex] = bin;
+			order[next[stratum[i]]] = i;
+			next[stratum[i]]++;
 		}
-		
-		return kFoldArray;
-    }
+		if (random != null) {
+			// next[s] is now where stratum s ends
+			int start = 0;
+			for (int s = 0; s < distinct.length; s++) {
+				for (int i = next[s] - 1; i > start; i--) {
+					int pick = start + random.nextInt(i - start + 1);
+					int swap = order[i];
+					order[i] = order[pick];
+					order[pick] = swap;
+				}
+				start = next[s];
+			}
+		}
+		return order;
+	}
 
-	/****
-	 * Method: cleanRow
-	 * Description: cleans one row of input data and converts text to strings
+    /****
+	 * Method: distinctLabels
+	 * Description: the distinct labels, sorted. Class labels are collected in one pass into a short sorted array -
+	 * labels with more distinct values than MAX_STRATA (regression) are sorted as a primitive array instead
 	****/
-	private static double[] cleanRow(int dataSetNumber, String inputLine) {
-		String[] inputLineSplit = inputLine.split(",");
-		int columnCount = getColumnCount(dataSetNumber);
-		double[] cleanData = new double[columnCount];
-
-		if (dataSetNumber == 0) { // breast cancer data
-			// loop over fields - start at 1 to drop sample code number
-			for (int i = 1; i < 11; i++) {
-				if (inputLineSplit[i].equals("?")) {
-					cleanData[i - 1] = 0; // set to zero if blank, will fix later
-				}
-				else {
-					cleanData[i - 1] = Double.parseDouble(inputLineSplit[i]);
-				}
+	private static double[] distinctLabels(double[] labels) {
+		double[] distinct = new double[MAX_STRATA];
+		int count = 0;
+		for (double label : labels) {
+			int position = Arrays.binarySearch(distinct, 0, count, label);
+			if (position >= 0) {
+				continue;
 			}
-		} else if (dataSetNumber == 1) { // car data			
-			// buying price
-			if (inputLineSplit[0].equals("v-high")) {
-				cleanData[0] = 3;
-			} else if (inputLineSplit[0].equals("high")) {
-				cleanData[0] = 2;
-			} else if (inputLineSplit[0].equals("med")) {
-				cleanData[0] = 1;
-			} else if (inputLineSplit[0].equals("low")) {
-				cleanData[0] = 0;
+			if (count == MAX_STRATA) {
+				// too many to insert one at a time
+				double[] sorted = labels.clone();
+				Arrays.sort(sorted);
+				count = 0;
+				for (int i = 0; i < sorted.length; i++) {
+					if (i == 0 || Double.compare(sorted[i], sorted[i - 1]) != 0) {
+						sorted[count] = sorted[i];
+						count++;
+					}
+				}
+				return Arrays.copyOf(sorted, count);
 			}
+			position = -position - 1;
+			System.arraycopy(distinct, position, distinct, position + 1, count - position);
+			distinct[position] = label;
+			count++;
+		}
+		return Arrays.copyOf(distinct, count);
+	}
 
-			// maintenance price
-			if (inputLineSplit[1].equals("v-high")) {
-				cleanData[1] = 3;
-			} else if (inputLineSplit[1].equals("high")) {
-				cleanData[1] = 2;
-			} else if (inputLineSplit[1].equals("med")) {
-				cleanData[1] = 1;
-			} else if (inputLineSplit[1].equals("low")) {
-				cleanData[1] = 0;
-			}
+    /****
+	 * Method: readData
+	 * Description: reads a comma separated file described by a schema. The file is memory mapped and cut into chunks
+	 * that end on a line break, the chunks are parsed in parallel on the common fork/join pool straight from the
+	 * mapped bytes, and their columns are joined back together in file order
+	****/
+    public static Dataset readData(DataSchema schema) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(schema.readFile, "r"); FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            long chunkCount = Math.max(1, Math.min(ForkJoinPool.commonPool().getParallelism(), size / MIN_CHUNK_BYTES));
+            chunkCount = Math.max(chunkCount, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+            // move each cut forward to the start of the next line
+            long[] cuts = new long[(int) chunkCount + 1];
+            cuts[(int) chunkCount] = size;
+            for (int c = 1; c < chunkCount; c++) {
+                cuts[c] = nextLineStart(channel, Math.max(cuts[c - 1], size * c / chunkCount));
+            }
+
+            List<ForkJoinTask<ColumnBuffer>> chunks = new ArrayList<ForkJoinTask<ColumnBuffer>>();
+            for (int c = 0; c < chunkCount; c++) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, cuts[c], cuts[c + 1] - cuts[c]);
+                int skipLines = (c == 0) ? schema.headerLines : 0;
+                long offset = cuts[c];
+                chunks.add(ForkJoinPool.commonPool().submit(() -> parseChunk(schema, bytes, skipLines, offset)));
+            }
+
+            List<ColumnBuffer> parsed = new ArrayList<ColumnBuffer>();
+            int rows = 0;
+            for (ForkJoinTask<ColumnBuffer> chunk : chunks) {
+                ColumnBuffer buffer = chunk.join();
+                parsed.add(buffer);
+                rows = rows + buffer.rows;
+            }
+            double[][] columns = new double[schema.columnCount][rows];
+            int row = 0;
+            for (ColumnBuffer buffer : parsed) {
+                for (int j = 0; j < schema.columnCount; j++) {
+                    System.arraycopy(buffer.columns[j], 0, columns[j], row, buffer.rows);
+                }
+                row = row + buffer.rows;
+            }
+            return new Dataset(Arrays.copyOf(columns, schema.columnCount - 1), columns[schema.columnCount - 1]);
+        }
+    }
 
-			// doors
-			if (inputLineSplit[2].equals("5more")) {
-				cleanData[2] = 5;
-			} else {
-				cleanData[2] = Integer.parseInt(inputLineSplit[2]);
-			}
+    /****
+	 * Method: nextLineStart
+	 * Description: position of the first line that starts at or after position
+	****/
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long scan = position - 1; // a line starts at position if the byte before it is a line break
+        while (true) {
+            window.clear();
+            int read = channel.read(window, scan);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return scan + i + 1;
+                }
+            }
+            scan = scan + read;
+        }
+    }
 
-			// persons
-			if (inputLineSplit[3].equals("more")) {
-				cleanData[3] = 5;
-			} else {
-				cleanData[3] = Integer.parseInt(inputLineSplit[3]);
-			}
+    /****
+	 * Method: parseChunk
+	 * Description: parses the lines of one chunk into growable columns. Blank lines are skipped, and fields past the
+	 * last declared one are ignored. offset is where the chunk starts in the file, for error messages
+	****/
+    private static ColumnBuffer parseChunk(DataSchema schema, MappedByteBuffer bytes, int skipLines, long offset) {
+        ColumnBuffer buffer = new ColumnBuffer(schema.columnCount);
+        int fieldCount = schema.getFieldCount();
+        int limit = bytes.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int nextLine = lineEnd + 1;
+            if (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            if (skipLines > 0) {
+                skipLines--;
+            } else if (lineEnd > lineStart) {
+                double[][] columns = buffer.nextRow();
+                int row = buffer.rows - 1;
+                int field = 0;
+                int fieldStart = lineStart;
+                while (field < fieldCount && fieldStart <= lineEnd) {
+                    int fieldEnd = fieldStart;
+                    while (fieldEnd < lineEnd && bytes.get(fieldEnd) != ',') {
+                        fieldEnd++;
+                    }
+                    parseField(schema, field, bytes, fieldStart, fieldEnd, columns, row, offset);
+                    field++;
+                    fieldStart = fieldEnd + 1;
+                }
+                if (field < fieldCount) {
+                    throw new IllegalArgumentException(schema.readFile + ": line at byte " + (offset + lineStart) + " has " + field + " fields, expected " + fieldCount);
+                }
+            }
+            lineStart = nextLine;
+        }
+        return buffer;
+    }
 
-			// size of luggage boot
-			if (inputLineSplit[4].equals("big")) {
-				cleanData[4] = 2;
-			} else if (inputLineSplit[4].equals("med")) {
-				cleanData[4] = 1;
-			} else if (inputLineSplit[4].equals("small")) {
-				cleanData[4] = 0;
-			}
-				
-			// safety
-			if (inputLineSplit[5].equals("high")) {
-				cleanData[5] = 2;
-			} else if (inputLineSplit[5].equals("med")) {
-				cleanData[5] = 1;
-			} else if (inputLineSplit[5].equals("low")) {
-				cleanData[5] = 0;
-			}
+    /****
+	 * Method: parseField
+	 * Description: converts the bytes [start, end) of one field into its output column(s) for a row
+	****/
+    private static void parseField(DataSchema schema, int field, MappedByteBuffer bytes, int start, int end, double[][] columns, int row, long offset) {
+        byte type = schema.fieldType[field];
+        if (type == DataSchema.DROP) {
+            return;
+        }
+        int column = schema.fieldColumn[field];
+        if (type != DataSchema.ONE_HOT && schema.missingMarker != null && matches(bytes, start, end, schema.missingMarker)) {
+            columns[column][row] = schema.missingValue; // fixed later by fixMissingValues
+            return;
+        }
+        if (type == DataSchema.NUMERIC) {
+            columns[column][row] = parseNumber(bytes, start, end);
+            return;
+        }
 
-			// car acceptability
-			if (inputLineSplit[6].equals("vgood")) {
-				cleanData[6] = 3;
-			} else if (inputLineSplit[6].equals("good")) {
-				cleanData[6] = 2;
-			} else if (inputLineSplit[6].equals("acc")) {
-				cleanData[6] = 1;
-			} else if (inputLineSplit[6].equals("unacc")) {
-				cleanData[6] = 0;
-			}
-		} else if (dataSetNumber == 2) { // house votes
-			if (inputLineSplit[0].equals("democrat")) {
-				cleanData[16] = 0;
-			} else { // republican
-				cleanData[16] = 1;
-			}
-			for (int i = 1; i < columnCount; i++) {
-				if (inputLineSplit[i].equals("?")) {
-					cleanData[i - 1] = -1; // set to zero if blank, will fix later
-				}
-				else if (inputLineSplit[i].equals("y")) {
-					cleanData[i - 1] = 1;
-				} else { // "n"
-					cleanData[i - 1] = 0;
-				}
-			}
-		} else if (dataSetNumber == 3) { // abalone
-			if (inputLineSplit[0].equals("M")) { // one-hot data for sex attribute
-				cleanData[0] = 1;
-				cleanData[1] = 0;
-				cleanData[2] = 0;
-			} else if (inputLineSplit[0].equals("F")) {
-				cleanData[0] = 0;
-				cleanData[1] = 1;
-				cleanData[2] = 0;
-			} else if (inputLineSplit[0].equals("I")) {
-				cleanData[0] = 0;
-				cleanData[1] = 0;
-				cleanData[2] = 1;
-			}
-			for (int i = 3; i < columnCount; i++) {
-				cleanData[i] = Double.parseDouble(inputLineSplit[i - 2]);
-			}
-		} else if (dataSetNumber == 4) { // computers
-			for (int i = 2; i < (columnCount + 2); i++) {
-				cleanData[i - 2] = Double.parseDouble(inputLineSplit[i]);
-			}
-		} else if (dataSetNumber == 5) { // forest fire
-			for (int i = 0; i < columnCount; i++) {
-				String currentVal = inputLineSplit[i];
-				if (i == 2) { // month
-					if (currentVal.equals("jan")) {
-						cleanData[2] = 0;
-					} else if (currentVal.equals("feb")) {
-						cleanData[2] = 1;
-					} else if (currentVal.equals("mar")) {
-						cleanData[2] = 2;
-					} else if (currentVal.equals("apr")) {
-						cleanData[2] = 3;
-					} else if (currentVal.equals("may")) {
-						cleanData[2] = 4;
-					} else if (currentVal.equals("jun")) {
-						cleanData[2] = 5;
-					} else if (currentVal.equals("jul")) {
-						cleanData[2] = 6;
-					} else if (currentVal.equals("aug")) {
-						cleanData[2] = 7;
-					} else if (currentVal.equals("sep")) {
-						cleanData[2] = 8;
-					} else if (currentVal.equals("oct")) {
-						cleanData[2] = 9;
-					} else if (currentVal.equals("nov")) {
-						cleanData[2] = 10;
-					} else if (currentVal.equals("dec")) {
-						cleanData[2] = 11;
-					}
-				} else if (i == 3) { // day
-					if (currentVal.equals("sun")) {
-						cleanData[3] = 0;
-					} else if (currentVal.equals("mon")) {
-						cleanData[3] = 1;
-					} else if (currentVal.equals("tue")) {
-						cleanData[3] = 2;
-					} else if (currentVal.equals("wed")) {
-						cleanData[3] = 3;
-					} else if (currentVal.equals("thu")) {
-						cleanData[3] = 4;
-					} else if (currentVal.equals("fri")) {
-						cleanData[3] = 5;
-					} else if (currentVal.equals("sat")) {
-						cleanData[3] = 6;
-					}
-				} else {
-					cleanData[i] = Double.parseDouble(currentVal);
-				}
-			}
-		}
+        byte[][] names = schema.categoryNames[field];
+        for (int k = 0; k < names.length; k++) {
+            if (matches(bytes, start, end, names[k])) {
+                if (type == DataSchema.CATEGORY) {
+                    columns[column][row] = schema.categoryValues[field][k];
+                } else {
+                    columns[column + k][row] = 1;
+                }
+                return;
+            }
+        }
+        throw new IllegalArgumentException(schema.readFile + ": unknown category \"" + text(bytes, start, end) + "\" in field " + field + " at byte " + (offset + start));
+    }
 
-		return cleanData;
-	}
+    /****
+	 * Method: parseNumber
+	 * Description: parses a decimal number without making a String. Plain decimals with at most 15 significant
+	 * digits are exact doubles divided by an exact power of ten, which rounds the same as Double.parseDouble.
+	 * Anything else (exponents, long mantissas) is handed to Double.parseDouble
+	****/
+    private static double parseNumber(MappedByteBuffer bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                sawDigit = true;
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i == end && sawDigit && digits <= 15 && scale < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text(bytes, start, end));
+    }
+
+    private static boolean matches(MappedByteBuffer bytes, int start, int end, byte[] token) {
+        if (end - start != token.length) {
+            return false;
+        }
+        for (int k = 0; k < token.length; k++) {
+            if (bytes.get(start + k) != token[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String text(MappedByteBuffer bytes, int start, int end) {
+        byte[] field = new byte[end - start];
+        for (int k = 0; k < field.length; k++) {
+            field[k] = bytes.get(start + k);
+        }
+        return new String(field, StandardCharsets.ISO_8859_1);
+    }
+
+    /****
+	 * Class: ColumnBuffer
+	 * Description: primitive columns for a chunk whose row count isn't known up front. The capacity doubles as rows are added
+	****/
+    private static final class ColumnBuffer {
+        double[][] columns;
+        int rows = 0;
+
+        ColumnBuffer(int columnCount) {
+            columns = new double[columnCount][1024];
+        }
+
+        double[][] nextRow() {
+            if (rows == columns[0].length) {
+                for (int j = 0; j < columns.length; j++) {
+                    columns[j] = Arrays.copyOf(columns[j], rows * 2);
+                }
+            }
+            rows++;
+            return columns;
+        }
+    }
 
 	/****
 	 * Method: fixMissingValues
 	 * Description: fixes missing values in data sets
 	****/
-	private static void fixMissingValues(int dataSetNumber, double[][] data) {
-		int rows = getRowCount(dataSetNumber);
-		int columns = getColumnCount(dataSetNumber);
-		
+	private static void fixMissingValues(int dataSetNumber, double[][] attributes) {
 		if (dataSetNumber == 0) {
-			for (int j = 0; j < columns; j++) {
+			for (int j = 0; j < attributes.length; j++) {
+				double[] column = attributes[j];
 				double average;
 				double sum = 0;
 				int count = 0;
-				for (int i = 0; i < rows; i++) {
-					if (data[i][j] > 0) {
-						sum = sum + data[i][j];
+				for (int i = 0; i < column.length; i++) {
+					if (column[i] > 0) {
+						sum = sum + column[i];
 						count++;
 					}
 				} 
 				// integer values, so round
 				average = Math.round(sum / count);
-				for (int i = 0; i < rows; i++) {
-					if (data[i][j] == 0) {
-						data[i][j] = average;
+				for (int i = 0; i < column.length; i++) {
+					if (column[i] == 0) {
+						column[i] = average;
 					}
 				}
 			}
 		} else if (dataSetNumber == 2) {
-			for (int j = 0; j < columns; j++) {
+			for (int j = 0; j < attributes.length; j++) {
+				double[] column = attributes[j];
 				double average;
 				double sum = 0;
 				int count = 0;
-				for (int i = 0; i < rows; i++) {
-					if (data[i][j] >= 0) {
-						sum = sum + data[i][j];
+				for (int i = 0; i < column.length; i++) {
+					if (column[i] >= 0) {
+						sum = sum + column[i];
 						count++;
 					}
 				} 
 				// integer values, so round
 				average = Math.round(sum / count);
-				for (int i = 0; i < rows; i++) {
-					if (data[i][j] == -1) {
-						data[i][j] = Math.round(average);
+				for (int i = 0; i < column.length; i++) {
+					if (column[i] == -1) {
+						column[i] = Math.round(average);
 					}
 				}
 			}
@@ -417,17 +564,16 @@ public class DataStream {
 	 * Method: standardizeData
 	 * Description: standardizes data to equally scale input varialbes - used in regression datasets
 	****/
-	private static void standardizeData(int dataSetNumber, double[][] data) {
-		int rows = getRowCount(dataSetNumber);
-		int columns = getColumnCount(dataSetNumber);
-		
-		for (int j = 0; j < columns; j++) {
+	private static void standardizeData(double[][] attributes) {
+		for (int j = 0; j < attributes.length; j++) {
+			double[] column = attributes[j];
+			int rows = column.length;
 			
 			// find the mean
 			double mean;
 			double sum = 0;
 			for (int i = 0; i < rows; i++) {
-				sum = sum + data[i][j];
+				sum = sum + column[i];
 			}
 			mean = (double) sum / (double) rows;
 			
@@ -435,13 +581,13 @@ public class DataStream {
 			double standardDeviation;
 			double squaredDifferece  = 0;
 			for (int i = 0; i < rows; i++) {
-				squaredDifferece = squaredDifferece + ((data[i][j] - mean) * (data[i][j] - mean));
+				squaredDifferece = squaredDifferece + ((column[i] - mean) * (column[i] - mean));
 			}
 			standardDeviation = Math.sqrt(squaredDifferece / (double) rows);
 			
 			// calculate the Z score for each entry
 			for (int i = 0; i < rows; i++) {
-				data[i][j] = (data[i][j] - mean) / standardDeviation;
+				column[i] = (column[i] - mean) / standardDeviation;
 			}
 		}
 	}
@@ -450,120 +596,74 @@ public class DataStream {
 	 * Method: splitData
 	 * Description: splits data into tuning and testing sets. Tuning gets 20% and testing the other 80%
 	****/
-	private static double[][] splitData(int dataSetNumber, double[][] data, boolean tuning) {
-		int rows = getRowCount(dataSetNumber);
-		int yColumn = getColumnCount(dataSetNumber);
-		double[][] sortedY = new double[rows][2]; // y value, original row index
-
-		// sort y values
-		for (int i = 0; i < rows; i++) {
-			sortedY[i][0] = data[i][yColumn - 1];
-			sortedY[i][1] = i;
-		}
-		Arrays.sort(sortedY, (row1, row2) -> Double.compare(row1[0], row2[0]));
-
-		int tuningSize = (rows / 5) + 1; // 20%
-		int rowCount;
-		if (tuning) { // tuning - split off 20%
-			rowCount = tuningSize;
-		} else { // remainder of data for testing
-			rowCount = rows - tuningSize;
-		}
-
-		if (rows % 5 == 0) {
-			rowCount++;
-		}
-		double[][] returnData = new double[rowCount][yColumn];
+	private static Dataset splitData(Dataset data, boolean tuning) {
+		return data.subset(splitRows(data.labels, tuning));
+	}
 
+	/****
+	 * Method: splitRows
+	 * Description: the rows splitData puts in the tuning (20%) or testing (80%) set, in label order - every fifth row
+	 * in label order goes to tuning
+	****/
+	static int[] splitRows(double[] labels, boolean tuning) {
+		int rows = labels.length;
+		int[] order = labelOrder(labels, null);
+		int tuningSize = (rows + 4) / 5;
+		int[] rowIndices = new int[tuning ? tuningSize : rows - tuningSize];
 		int curReturnRow = 0;
-		int rowIndex;
 		for (int i = 0; i < rows; i++) {
-			if (tuning) {
-				if ((i % 5) == 0) { // 20% of values
-					for (int j = 0; j < yColumn; j++) {
-						rowIndex = (int) sortedY[i][1];
-						returnData[curReturnRow][j] = data[rowIndex][j];
-					}
-					curReturnRow++;
-				}
-			} else {
-				if ((i % 5) > 0) { // 80% of values
-					for (int j = 0; j < yColumn; j++) {
-						rowIndex = (int) sortedY[i][1];
-						returnData[curReturnRow][j] = data[rowIndex][j];
-					}
-					curReturnRow++;
-				}
+			if (((i % 5) == 0) == tuning) {
+				rowIndices[curReturnRow] = order[i];
+				curReturnRow++;
 			}
-			
 		}
-
-		return returnData;
+		return rowIndices;
 	}
 
 
     /****
-	 * Method: getRowCount
-	 * Description: returns rows in a dataset
+	 * Method: getSchema
+	 * Description: returns the file and column layout of a dataset
 	****/
-	private static int getRowCount(int dataSetNumber) {
-		if (dataSetNumber == 0) { // breast cancer
-			return 699;
+	static DataSchema getSchema(int dataSetNumber) {
+		if (dataSetNumber == 0) { // breast cancer - drop sample code number, "?" set to zero and fixed later
+			return new DataSchema("data/breast-cancer-wisconsin(1).data", 10)
+				.missing("?", 0)
+				.numeric(1, 10, 0);
 		} else if (dataSetNumber == 1) { // cars
-			return 1728;
-		} else if (dataSetNumber == 2) { // house votes
-			return 435;
-		} else if (dataSetNumber == 3) { // abalone
-			return 4177;
-		} else if (dataSetNumber == 4) { // computer hardware
-			return 209;
-		} else if (dataSetNumber == 5) { // forest fires 
-			return 517;
-		}
-		return 0;
-	}
-
-	/****
-	 * Method: getColumnCount
-	 * Description: returns columns in a dataset
-	****/
-	private static int getColumnCount(int dataSetNumber) {
-		if (dataSetNumber == 0) { // breast cancer
-			return 10;
-		} else if (dataSetNumber == 1) { // cars 
-			return 7;
-		} else if (dataSetNumber == 2) { // house votes
-			return 17;
-		} else if (dataSetNumber == 3) { // abalone
-			return 11;
-		} else if (dataSetNumber == 4) { // computer hardware
-			return 8;
-		} else if (dataSetNumber == 5) { // forest fires
-			return 13;
-		}
-		return 0;
-	}
-
-	/****
-	 * Method: getReadFile
-	 * Description: returns filename for a dataset
-	****/
-	private static String getReadFile(int dataSetNumber) {
-		if (dataSetNumber == 0) {
-			return "data/breast-cancer-wisconsin(1).data";
-		} else if (dataSetNumber == 1) {
-			return "data/car(1).data";
-		} else if (dataSetNumber == 2) {
-			return "data/house-votes-84(1).data";
-		} else if (dataSetNumber == 3) {
-			return "data/abalone(1).data";
-		} else if (dataSetNumber == 4) {
-			return "data/machine(1).data";
-		} else if (dataSetNumber == 5) {
-			return "data/forestfires(1).data";
+			String[] price = {"low", "med", "high", "vhigh"};
+			return new DataSchema("data/car(1).data", 7)
+				.category(0, 0, price) // buying price
+				.category(1, 1, price) // maintenance price
+				.category(2, 2, new String[] {"2", "3", "4", "5more"}, new double[] {2, 3, 4, 5}) // doors
+				.category(3, 3, new String[] {"2", "4", "more"}, new double[] {2, 4, 5}) // persons
+				.category(4, 4, "small", "med", "big") // size of luggage boot
+				.category(5, 5, "low", "med", "high") // safety
+				.category(6, 6, "unacc", "acc", "good", "vgood"); // car acceptability
+		} else if (dataSetNumber == 2) { // house votes - party is the first field but the label column, "?" set to -1 and fixed later
+			DataSchema schema = new DataSchema("data/house-votes-84(1).data", 17)
+				.missing("?", -1)
+				.category(0, 16, "democrat", "republican");
+			for (int i = 1; i < 17; i++) {
+				schema.category(i, i - 1, "n", "y");
+			}
+			return schema;
+		} else if (dataSetNumber == 3) { // abalone - one-hot data for sex attribute
+			return new DataSchema("data/abalone(1).data", 11)
+				.oneHot(0, 0, "M", "F", "I")
+				.numeric(1, 8, 3);
+		} else if (dataSetNumber == 4) { // computer hardware - drop vendor and model name
+			return new DataSchema("data/machine(1).data", 8)
+				.numeric(2, 9, 0);
+		} else if (dataSetNumber == 5) { // forest fires - throw away first line
+			return new DataSchema("data/forestfires(1).data", 13)
+				.skipHeader(1)
+				.numeric(0, 1, 0)
+				.category(2, 2, "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec")
+				.category(3, 3, "sun", "mon", "tue", "wed", "thu", "fri", "sat")
+				.numeric(4, 12, 4);
 		}
-		
-		return "";
+		throw new IllegalArgumentException("no data file for data set " + dataSetNumber);
 	}
 
 	/****
@@ -571,7 +671,7 @@ public class DataStream {
 	 * Description: returns true if classification dataset, false if regression
 	****/
 	private static boolean getClassification(int dataSetNumber) {
-		if (dataSetNumber < 3) {
+		if (dataSetNumber < 3 || dataSetNumber == 6) { // 6 is the classification lecture example
 			return true;
 		}
 		return false;
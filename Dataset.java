@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/****
+ * Class: Dataset
+ * Description: column-major data set. Each attribute is stored in its own primitive array and the
+ * class/target values are stored in a separate label array, so scanning one attribute walks contiguous memory.
+ * Categorical attributes can be dictionary encoded - each value is then stored as a 1 or 2 byte code into a sorted
+ * per-column dictionary instead of an 8 byte double
+****/
+public class Dataset {
+    static final int MAX_BYTE_CATEGORIES = 256;
+    static final int MAX_CATEGORIES = 65536;
+
+    final double[][] attributes; // attributes[column][row] - null for dictionary encoded columns
+    final byte[][] byteCodes; // byteCodes[column][row] - encoded columns with at most 256 categories, read as unsigned
+    final short[][] shortCodes; // shortCodes[column][row] - encoded columns with more categories, read as unsigned
+    final double[][] dictionary; // dictionary[column][code] - sorted category values of an encoded column, null otherwise
+    final double[] labels; // class label (classification) or target value (regression) for each row
+    final int rows;
+
+    /****
+	 * Method: Dataset constructor
+	 * Description: takes one array per attribute and the label array. All arrays must have the same length
+	****/
+    Dataset(double[][] attributes, double[] labels) {
+        this(attributes, new byte[attributes.length][], new short[attributes.length][], new double[attributes.length][], labels);
+    }
+
+    /****
+	 * Method: Dataset constructor
+	 * Description: takes the storage of every column - each column is either a double array or codes plus a dictionary
+	****/
+    Dataset(double[][] attributes, byte[][] byteCodes, short[][] shortCodes, double[][] dictionary, double[] labels) {
+        for (int j = 0; j < attributes.length; j++) {
+            int length;
+            if (dictionary[j] == null) {
+                length = attributes[j].length;
+            } else {
+                length = (byteCodes[j] != null) ? byteCodes[j].length : shortCodes[j].length;
+            }
+            if (length != labels.length) {
+                throw new IllegalArgumentException("attribute " + j + " has " + length + " rows, expected " + labels.length);
+            }
+        }
+        this.attributes = attributes;
+        this.byteCodes = byteCodes;
+        this.shortCodes = shortCodes;
+        this.dictionary = dictionary;
+        this.labels = labels;
+        this.rows = labels.length;
+    }
+
+    /****
+	 * Method: fromRows
+	 * Description: builds a data set from row-major data where the last column of each row is the label
+	****/
+    public static Dataset fromRows(double[][] data) {
+        int rows = data.length;
+        int attributeCount = data[0].length - 1;
+        double[][] attributes = new double[attributeCount][rows];
+        double[] labels = new double[rows];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < attributeCount; j++) {
+                attributes[j][i] = data[i][j];
+            }
+            labels[i] = data[i][attributeCount];
+        }
+        return new Dataset(attributes, labels);
+    }
+
+    /****
+	 * Method: encode
+	 * Description: dictionary encodes every categorical attribute that isn't encoded yet. The label entry of the
+	 * categorical attribute array is ignored. Numeric columns and the labels are shared with this data set, and this
+	 * data set is returned as is if there is nothing to encode
+	****/
+    public Dataset encode(boolean[] categoricalAttribute) {
+        boolean changed = false;
+        double[][] encodedAttributes = attributes.clone();
+        byte[][] encodedBytes = byteCodes.clone();
+        short[][] encodedShorts = shortCodes.clone();
+        double[][] encodedDictionary = dictionary.clone();
+
+        for (int j = 0; j < attributes.length; j++) {
+            if (!categoricalAttribute[j] || isEncoded(j)) {
+                continue;
+            }
+            double[] column = attributes[j];
+            double[] values = column.clone();
+            Arrays.sort(values);
+            TreeEvents.sortsPerformed.increment();
+            int distinctCount = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (i == 0 || values[i] != values[i - 1]) {
+                    values[distinctCount] = values[i];
+                    distinctCount++;
+                }
+            }
+            if (distinctCount > MAX_CATEGORIES) {
+                throw new IllegalArgumentException("attribute " + j + " has " + distinctCount + " categories, at most " + MAX_CATEGORIES + " can be encoded");
+            }
+            double[] categories = Arrays.copyOf(values, distinctCount);
+
+            if (distinctCount <= MAX_BYTE_CATEGORIES) {
+                byte[] codes = new byte[rows];
+                for (int i = 0; i < rows; i++) {
+                    codes[i] = (byte) Arrays.binarySearch(categories, column[i]);
+                }
+                encodedBytes[j] = codes;
+            } else {
+                short[] codes = new short[rows];
+                for (int i = 0; i < rows; i++) {
+                    codes[i] = (short) Arrays.binarySearch(categories, column[i]);
+                }
+                encodedShorts[j] = codes;
+            }
+            encodedDictionary[j] = categories;
+            encodedAttributes[j] = null;
+            changed = true;
+        }
+
+        if (!changed) {
+            return this;
+        }
+        return new Dataset(encodedAttributes, encodedBytes, encodedShorts, encodedDictionary, labels);
+    }
+
+    /****
+	 * Method: subset
+	 * Description: copies the given rows (in the given order) into a new data set. Dictionaries are shared
+	****/
+    public Dataset subset(int[] rowIndices) {
+        double[][] subsetAttributes = new double[attributes.length][];
+        byte[][] subsetBytes = new byte[attributes.length][];
+        short[][] subsetShorts = new short[attributes.length][];
+        double[] subsetLabels = new double[rowIndices.length];
+
+        for (int j = 0; j < attributes.length; j++) {
+            if (byteCodes[j] != null) {
+                byte[] codes = byteCodes[j];
+                byte[] subsetCodes = new byte[rowIndices.length];
+                for (int i = 0; i < rowIndices.length; i++) {
+                    subsetCodes[i] = codes[rowIndices[i]];
+                }
+                subsetBytes[j] = subsetCodes;
+            } else if (shortCodes[j] != null) {
+                short[] codes = shortCodes[j];
+                short[] subsetCodes = new short[rowIndices.length];
+                for (int i = 0; i < rowIndices.length; i++) {
+                    subsetCodes[i] = codes[rowIndices[i]];
+                }
+                subsetShorts[j] = subsetCodes;
+            } else {
+                double[] column = attributes[j];
+                double[] subsetColumn = new double[rowIndices.length];
+                for (int i = 0; i < rowIndices.length; i++) {
+                    subsetColumn[i] = column[rowIndices[i]];
+                }
+                subsetAttributes[j] = subsetColumn;
+            }
+        }
+        for (int i = 0; i < rowIndices.length; i++) {
+            subsetLabels[i] = labels[rowIndices[i]];
+        }
+        return new Dataset(subsetAttributes, subsetBytes, subsetShorts, dictionary.clone(), subsetLabels);
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getAttributeCount() {
+        return attributes.length;
+    }
+
+    public boolean isEncoded(int column) {
+        return dictionary[column] != null;
+    }
+
+    /****
+	 * Method: getCardinality
+	 * Description: number of categories in an encoded column's dictionary
+	****/
+    public int getCardinality(int column) {
+        return dictionary[column].length;
+    }
+
+    /****
+	 * Method: code
+	 * Description: category code of one value of an encoded column - an index into its dictionary
+	****/
+    public int code(int column, int row) {
+        byte[] codes = byteCodes[column];
+        if (codes != null) {
+            return codes[row] & 0xFF;
+        }
+        return shortCodes[column][row] & 0xFFFF;
+    }
+
+    /****
+	 * Method: value
+	 * Description: value of one attribute for one row, whether or not the column is encoded
+	****/
+    public double value(int column, int row) {
+        double[] categories = dictionary[column];
+        if (categories == null) {
+            return attributes[column][row];
+        }
+        return categories[code(column, row)];
+    }
+
+    /****
+	 * Method: getRow
+	 * Description: returns a row-major copy of one row, label last. Only meant for printing and debugging
+	****/
+    public double[] getRow(int row) {
+        double[] values = new double[attributes.length + 1];
+        for (int j = 0; j < attributes.length; j++) {
+            values[j] = value(j, row);
+        }
+        values[attributes.length] = labels[row];
+        return values;
+    }
+}
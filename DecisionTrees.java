@@ -5,9 +5,18 @@ Date: 17 October 2021
 Purpose: This project implements decision trees
 ****/
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 public class DecisionTrees {
     public static void main( String[] args )
@@ -16,14 +25,31 @@ public class DecisionTrees {
         double errorThreshold = 10000; // early stopping MSE for regression datasets (added the small value b/c of weird double comparison in java)
         boolean prune = true;
         boolean tune = false;
+        boolean histogram = false; // find splits from binned attribute histograms instead of presorted rows
+        int threads = Runtime.getRuntime().availableProcessors(); // cross validation folds trained at the same time - above 1, subtrees are built in parallel too
+        String binaryFile = null; // column file written by ColumnFile/DataStream.convertToBinary for dataSetNumber - null parses the text file
+        String modelFile = null; // fold 0's tree is written here as a ModelFile for scoring - null skips it
+        boolean printCounters = false; // print the TreeEvents counters (nodes, rows scanned, sorts, node bytes) at the end
+        double minGain = 0; // splits must remove at least this much squared error (weight times MSE reduction) or entropy - 0 for any split
+        boolean bestFirst = false; // grow each tree best leaf first, within the limits below
+        int maxLeaves = 0; // best first - most leaves per tree, 0 for no limit
+        long timeLimitMillis = 0; // best first - stop growing a tree after this long, 0 for no limit
 
         //double data[][] = DataStream.getData(dataSetNumber, 0);
 
         boolean[] categoricalAttribute = DataStream.getCatArray(dataSetNumber);
-        double[][] tuneAndPruneData = DataStream.getData(dataSetNumber, 1); // 20% used for early stopping - pruning or tuning error
-        double[][] testData = DataStream.getData(dataSetNumber, 2); // 80% used 
+        Dataset tuneAndPruneData;
+        Dataset testData;
+        if (binaryFile != null) {
+            categoricalAttribute = DataStream.mapData(binaryFile).getCatArray();
+            tuneAndPruneData = DataStream.getData(binaryFile, 1);
+            testData = DataStream.getData(binaryFile, 2);
+        } else {
+            tuneAndPruneData = DataStream.getData(dataSetNumber, 1); // 20% used for early stopping - pruning or tuning error
+            testData = DataStream.getData(dataSetNumber, 2); // 80% used 
+        }
 
-        double[][] data;
+        Dataset data;
         if (tune && !categoricalAttribute[categoricalAttribute.length - 1]) { // only tune regression data sets
             data = tuneAndPruneData;
         } else {
@@ -31,70 +57,145 @@ public class DecisionTrees {
         }
 
         /* // print data
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[0].length; j++) {
-                System.out.print(data[i][j] + " "); 
+        for (int i = 0; i < data.rows; i++) {
+            for (int j = 0; j < data.attributes.length; j++) {
+                System.out.print(data.value(j, i) + " "); 
             }
-            System.out.print("\n");
+            System.out.print(data.labels[i] + "\n");
         }*/
 
-        double[] results = new double[data.length];
+        double[] results = new double[data.rows];
         int[] kFoldArray = DataStream.getKFold(dataSetNumber, 5, data);
 
-        // loop over each of the k folds, create a tree for remaining k-1 folds and test with k fold
-        for (int i = 0; i < 5; i++) {
+        TreeOptions options = new TreeOptions();
+        options.errorThreshold = errorThreshold + 0.0001;
+        options.histogram = histogram;
+        options.bestFirst = bestFirst;
+        options.minGain = minGain;
+        options.maxLeaves = maxLeaves;
+        options.timeLimitMillis = timeLimitMillis;
+        if (threads > 1) {
+            options.pool = ForkJoinPool.commonPool(); // also build subtrees of each tree in parallel
+        }
 
-            // create the current training set out of k-1 folds
-            int currentTrainingSetLength = 0;
-            for (int j = 0; j < data.length; j++) {
-                if (kFoldArray[j] != i) {
-                    currentTrainingSetLength++;
-                }
-            }
-            
-            // make training set from k-1 folds
-            double[][] currentTrainingSet = new double[currentTrainingSetLength][data[0].length];
-            int currentIndex = 0;
-            for (int j = 0; j < data.length; j++) {
-                if (kFoldArray[j] != i) {
-                    for (int k = 0; k < data[0].length; k++) {
-                        currentTrainingSet[currentIndex][k] = data[j][k];
-                    }
-                    currentIndex++;
-                }
+        // train a tree for each of the k folds in parallel - each is tested with the fold it left out
+        Dataset pruneData = null;
+        if (prune && categoricalAttribute[categoricalAttribute.length - 1]) {
+            pruneData = tuneAndPruneData;
+        }
+        long[] foldMillis = new long[5];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Node[] trees = crossValidate(data, kFoldArray, 5, categoricalAttribute, options, pruneData, executor, results, foldMillis);
+        executor.shutdown();
+
+        if (modelFile != null) {
+            try {
+                ModelFile.write(CompiledTree.compile(trees[0]), modelFile);
+            } catch (IOException except) {
+                System.out.println("cannot write model: " + except.getMessage());
+                System.exit(1);
             }
-            // generate tree from the data
-            Node decisionTree = startGenerateTree(currentTrainingSet, categoricalAttribute, errorThreshold + 0.0001);
-
-            decisionTree.printTree("");
+        }
 
-            // prune with the prune data set
-            if (prune && categoricalAttribute[categoricalAttribute.length - 1]) {
-                pruneTree(decisionTree, decisionTree, tuneAndPruneData, dataSetNumber);
-                System.out.print("\n\nPruned Tree\n");
-                decisionTree.printTree("");
+        for (int i = 0; i < 5; i++) {
+            System.out.println("Fold " + i + " (" + foldMillis[i] + " ms)");
+            if (pruneData != null) {
+                System.out.print("Pruned Tree\n");
             }
-            
-            // evaulate tree with the remaining 1 fold
-            evaluateTree(decisionTree, data, i, kFoldArray, results);
+            trees[i].printTree("");
+            System.out.print("\n\n");
         }
         
         // print results
-        for (int i = 0; i < data.length; i++) {
-            System.out.println(results[i] + " " + data[i][data[0].length - 1]);
+        for (int i = 0; i < data.rows; i++) {
+            System.out.println(results[i] + " " + data.labels[i]);
         }
 
         // calculate performance (MSE or classification accuracy)
         double performance = DataStream.calculatePerformance(dataSetNumber, results, data);
         System.out.println("Performance: " + performance);
+        if (printCounters) {
+            System.out.println(TreeEvents.summary());
+        }
+    }
+
+    /****
+	 * Method: crossValidate
+	 * Description: runs k-fold cross validation with the folds trained concurrently on the executor. Fold i grows a tree with the given options on
+	 * every row whose kFoldArray entry isn't i, is pruned with pruneData (skipped if null), then writes predictions
+	 * for its own rows of results only. Returns each fold's tree and fills foldMillis with each fold's wall-clock time.
+	 * No fold copies the data - the attributes are presorted (or binned) once, and each fold trains on a weight mask
+	 * over those rows
+	****/
+    public static Node[] crossValidate(Dataset data, int[] kFoldArray, int k, boolean[] categoricalAttribute, TreeOptions options, 
+            Dataset pruneData, ExecutorService executor, double[] results, long[] foldMillis) {
+        Node[] trees = new Node[k];
+        List<Future<?>> folds = new ArrayList<Future<?>>();
+        TrainingIndex base = new TrainingIndex(data, categoricalAttribute, options);
+
+        for (int i = 0; i < k; i++) {
+            final int fold = i;
+            folds.add(executor.submit(() -> {
+                long startTime = System.nanoTime();
+
+                // train on k-1 folds - weight 1 for their rows, 0 for the held out fold
+                int[] rowWeight = new int[data.rows];
+                int testCount = 0;
+                for (int j = 0; j < data.rows; j++) {
+                    if (kFoldArray[j] != fold) {
+                        rowWeight[j] = 1;
+                    } else {
+                        testCount++;
+                    }
+                }
+
+                // generate tree from the data
+                Node decisionTree = startGenerateTree(base, rowWeight, options);
+
+                // prune with the prune data set
+                if (pruneData != null) {
+                    reducedErrorPrune(decisionTree, pruneData);
+                }
+
+                // evaulate tree with the remaining 1 fold
+                int[] testRows = new int[testCount];
+                int currentIndex = 0;
+                for (int j = 0; j < data.rows; j++) {
+                    if (kFoldArray[j] == fold) {
+                        testRows[currentIndex] = j;
+                        currentIndex++;
+                    }
+                }
+                CompiledTree.compile(decisionTree).predict(data, testRows, results);
+
+                trees[fold] = decisionTree;
+                foldMillis[fold] = (System.nanoTime() - startTime) / 1000000;
+            }));
+        }
+
+        // wait for every fold - get() also makes the trees and results written by the folds visible here
+        for (Future<?> fold : folds) {
+            try {
+                fold.get();
+            } catch (InterruptedException except) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for cross validation folds", except);
+            } catch (ExecutionException except) {
+                if (except.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) except.getCause();
+                }
+                throw new IllegalStateException("cross validation fold failed", except.getCause());
+            }
+        }
+        return trees;
     }
 
     /****
 	 * Method: evaluateTree
 	 * Description: takes a tree and test data and makes predictions based on the attributes
 	****/
-    public static void evaluateTree(Node root, double[][] data, int kFold, int[] kFoldArray, double[] results) {
-        for (int i = 0; i < data.length; i++) {
+    public static void evaluateTree(Node root, Dataset data, int kFold, int[] kFoldArray, double[] results) {
+        for (int i = 0; i < data.rows; i++) {
             if (kFold == -1 || kFoldArray[i] == kFold) {
                 Node currentNode = root;
                 double currentMostFrequent = currentNode.mostFrequentClass;
@@ -108,11 +209,11 @@ public class DecisionTrees {
                         currentMostFrequent = currentNode.mostFrequentClass;
 
                         // traverse to child node based on data's feature value
-                        currentNode = currentNode.childNodes.get(data[i][splitIndex]);
+                        currentNode = currentNode.childNodes.get(data.value(splitIndex, i));
                         
                     } else { // numeric attribute - binary split
                         // take left child
-                        if (data[i][splitIndex] > currentNode.splitValue) {
+                        if (data.value(splitIndex, i) <= currentNode.splitValue) {
                             currentNode = currentNode.childNodes.get(0.0);
                         } else {
                             currentNode = currentNode.childNodes.get(1.0);
@@ -133,604 +234,423 @@ public class DecisionTrees {
 	 * Method: startGenerateTree
 	 * Description: begins generation of a decision tree
 	****/
-    public static Node startGenerateTree(double[][] data, boolean[] categoricalAttribute, double errorThreshold) {
-        Node root = new Node(data, categoricalAttribute);
+    public static Node startGenerateTree(Dataset data, boolean[] categoricalAttribute, double errorThreshold) {
+        return startGenerateTree(data, categoricalAttribute, errorThreshold, false);
+    }
+
+    /****
+	 * Method: startGenerateTree
+	 * Description: begins generation of a decision tree. With histogram set, splits are found from binned attributes
+	 * (at most 256 bins each) instead of the presorted rows
+	****/
+    public static Node startGenerateTree(Dataset data, boolean[] categoricalAttribute, double errorThreshold, boolean histogram) {
+        TreeOptions options = new TreeOptions();
+        options.errorThreshold = errorThreshold;
+        options.histogram = histogram;
+        return startGenerateTree(data, categoricalAttribute, options);
+    }
+
+    /****
+	 * Method: startGenerateTree
+	 * Description: begins generation of a decision tree with the given options. If options.pool is set, subtrees
+	 * are built in parallel on it. With options.bestFirst the tree is grown leaf by leaf within the options' limits,
+	 * see growBestFirst
+	****/
+    public static Node startGenerateTree(Dataset data, boolean[] categoricalAttribute, TreeOptions options) {
+        Node root = new Node(new TrainingIndex(data, categoricalAttribute, options), 0, data.rows);
         //root.printData(data);
-        generateTree(root, "", errorThreshold);
+        growTree(root, options);
         return root;  
     }
 
     /****
-	 * Method: generateTree
-	 * Description: recursive function that determines splits on the current node
+	 * Method: startGenerateTree
+	 * Description: grows a tree on a view of base's rows - each row counts rowWeight[row] times and rows with weight 0
+	 * are left out, for example a cross validation fold. Nothing is copied, and presorted columns aren't sorted again.
+	 * With weights of 0 and 1 the tree is the one startGenerateTree would grow on a copy of the rows
 	****/
-    public static void generateTree(Node root, String offset, double errorThreshold) {
-        // stopping case
-        boolean isClassification = root.categoricalAttribute[root.categoricalAttribute.length - 1];
-        if (isClassification) {
-            root.calculateEntropy();
+    static Node startGenerateTree(TrainingIndex base, int[] rowWeight, TreeOptions options) {
+        TrainingIndex index = new TrainingIndex(base, rowWeight, options, true);
+        Node root = new Node(index, 0, index.rowIndex.length);
+        growTree(root, options);
+        return root;
+    }
+
+    /****
+	 * Method: growTree
+	 * Description: grows the tree under root as the options ask - best first, in parallel on options.pool, or serially
+	****/
+    static void growTree(Node root, TreeOptions options) {
+        if (options.bestFirst) {
+            growBestFirst(root, options);
+        } else if (options.pool == null) {
+            generateTree(root, "", options.errorThreshold);
         } else {
-            root.calculateMSE();
+            options.pool.invoke(new SubtreeTask(root, options.errorThreshold, options.parallelCutoff));
         }
-        
-        if (isClassification && (root.entropy == 0 || root.noPossibleSplit())) {
-            // make node into leaf and return
-            root.makeLeaf();
-            //System.out.println(offset + "Leaf value = " + root.leafValue);
-            return; 
-        } else if (!isClassification && root.meanSquaredError <= errorThreshold) {
-            root.makeLeaf();
-            //System.out.println(offset + "Leaf value = " + root.leafValue);
-        } else { // need to split futher
-            int splitIndex;
-            if (isClassification) {
-                splitIndex = root.determineSplitClassification();
-            } else {
-                splitIndex = root.determineSplitRegression();
-            }
-            
-            // entropy is all the same from splits - will keep splitting on same attribute
-            if (splitIndex == -1) {
-                root.makeLeaf();
-                //System.out.println(offset + "Leaf value = " + root.leafValue);
-                return;
-            }
-
-            // split the node
-            root.split(splitIndex);
-            //System.out.println(offset + "Split on attribute " + splitIndex);
+    }
 
+    /****
+	 * Method: generateTree
+	 * Description: recursive function that determines splits on the current node
+	****/
+    public static void generateTree(Node root, String offset, double errorThreshold) {
+        if (growNode(root, errorThreshold)) {
             // loop over children and generate a tree from each child
             for (Map.Entry<Double, Node> entry: root.childNodes.entrySet()) {
                 /* // print as it is grown
-                if (root.categoricalAttribute[splitIndex]) { // splitting on a category attribute
+                if (root.categoricalAttribute[root.splitIndex]) { // splitting on a category attribute
                     System.out.println(offset + "Split value: " + entry.getKey());
                 } else {
                     if (entry.getKey() == 0.0) { // left split
-                        System.out.println(offset + "Split value < " + root.splitValue);
+                        System.out.println(offset + "Split value <= " + root.splitValue);
                     } else {
                         System.out.println(offset + "Split value > " + root.splitValue);
                     }
                 }*/
                 generateTree(entry.getValue(), offset + "   ", errorThreshold);
             }
-            
         }
     }
-    
+
     /****
-	 * Method: pruneTree
-	 * Description: prunes classification trees. Recursively traverses tree and sees if removing the node helps the performance based on a pruning set
+	 * Method: growNode
+	 * Description: checks the stopping criteria for one node, then either makes it a leaf or splits it. 
+	 * Returns true if the node was split and its children still need to be grown
 	****/
-    public static void pruneTree(Node currentNode, Node root, double[][] pruneData, int dataSetNumber) {
-        // stopping case if leaf
-        if (currentNode.isLeaf) {
-            return;
-        } else {
-            // recur for each child node
-            for (Map.Entry<Double, Node> entry: currentNode.childNodes.entrySet()) {
-                pruneTree(entry.getValue(), root, pruneData, dataSetNumber);
-            }
-
-            double[] results = new double[pruneData.length];
-            int[] kFoldArray = new int[pruneData.length]; 
-            // evaluate performance for existing pruned and with current node pruned
-            evaluateTree(root, pruneData, -1, kFoldArray, results);
-            double currentPerformance = DataStream.calculatePerformance(dataSetNumber, results, pruneData);
-
-            // prune the node
-            currentNode.isPruned = true;
-
-            evaluateTree(root, pruneData, -1, kFoldArray, results);
-            double prunedPerformance = DataStream.calculatePerformance(dataSetNumber, results, pruneData);
-
-            // if pruning makes tree worse, revert it to not pruned
-            if (prunedPerformance < currentPerformance) {
-                currentNode.isPruned = false;
-            } 
-            return;
+    static boolean growNode(Node root, double errorThreshold) {
+        int splitIndex = findSplit(root, errorThreshold);
+        if (splitIndex == -1) {
+            // make node into leaf and return
+            root.makeLeaf();
+            //System.out.println(offset + "Leaf value = " + root.leafValue);
+            return false;
         }
-    }
-}
-
-
-
-class Node {
-    double[][] data;  // keep track of the data at the current node when building the tree
-    boolean[] categoricalAttribute; // = {true, true, true, true, true};
-    HashMap<Double, Node> childNodes = new HashMap<Double, Node>(); // keep track of children -> could have any number of children if split on categorical attribute
-    int splitIndex; // attribute to split on
-    int splitRow; // row on which to split if it splits on a numeric attribute
-    double splitValue; // split condition if numeric attribute
-    double entropy; // entropy value at node
-    double meanSquaredError; // MSE at node - used on regression datasets
-    int[][] frequency; // the frequency of each category value across the data
-    boolean isLeaf; // is this node a leaf node?
-    double leafValue; // value at the leaf
-    double mostFrequentClass; // value of most frequent class with training subset at the node
-    boolean isPruned; // flag if the current node has been removed with pruning
 
-    /****
-	 * Method: Node constructor
-	 * Description: takes data and categorical attribute array
-	****/
-    Node(double[][] data, boolean[] categoricalAttribute) {
-        this.data = data;
-        this.categoricalAttribute = categoricalAttribute;
-        this.calculateFrequency();
-        this.isLeaf = false;
-        this.isPruned = false;
+        // split the node
+        root.split(splitIndex);
+        //System.out.println(offset + "Split on attribute " + splitIndex);
+        return true;
     }
 
     /****
-	 * Method: calculateEntropy
-	 * Description: calculates the entropy of a node
+	 * Method: findSplit
+	 * Description: checks the stopping criteria for one node and searches for its split. Returns the attribute to
+	 * split on, with the node's splitValue and splitGain set, or -1 if the node should become a leaf - also when the
+	 * best split removes less impurity than options.minGain. The node itself is left as it is
 	****/
-    public void calculateEntropy() {
-        int rows = data.length;
-        int columns = data[0].length;
-        double[] sortedY = new double[rows];
-
-        for (int i = 0; i < rows; i++) {
-            sortedY[i] = data[i][columns - 1];
+    static int findSplit(Node root, double errorThreshold) {
+        // stopping case
+        // entropy and MSE were worked out from the node's label statistics when it was created
+        boolean isClassification = root.categoricalAttribute[root.categoricalAttribute.length - 1];
+        if (isClassification && (root.entropy == 0 || root.noPossibleSplit())) {
+            return -1;
+        } else if (!isClassification && root.meanSquaredError <= errorThreshold) {
+            return -1;
         }
 
-        Arrays.sort(sortedY);
-
-        int currentCount = 1;
-        entropy = 0;
-        for (int i = 0; i < rows; i++) {
-            if (i == (rows - 1) || sortedY[i] != sortedY[i + 1]) {
-                entropy = entropy - ((double) currentCount / rows) * Math.log((double) currentCount / rows);
-                currentCount = 1;
-            } else {
-                currentCount++;
-            }
+        // need to split futher
+        TreeEvents.SplitSearchEvent event = new TreeEvents.SplitSearchEvent();
+        event.begin();
+        int splitIndex;
+        if (isClassification) {
+            splitIndex = root.determineSplitClassification();
+        } else {
+            splitIndex = root.determineSplitRegression();
         }
-    }
-
-    /****
-	 * Method: calculateMSE
-	 * Description: calculates the MSE of a node
-	****/
-    public void calculateMSE() {
-        double meanSquared = 0;
-        double average = 0;
-        for (int i = 0; i < data.length; i++) {
-            average = average + (data[i][data[0].length - 1] / data.length);
+        event.end();
+        boolean histogram = root.index.histogramSplitter != null;
+        if (!histogram) {
+            TreeEvents.rowsScanned.add((long) root.getRowCount() * root.index.candidateCount());
+        }
+        if (event.shouldCommit()) {
+            event.depth = root.depth;
+            event.rows = root.getRowCount();
+            event.attributesEvaluated = root.index.candidateCount();
+            event.chosenAttribute = splitIndex;
+            event.histogram = histogram;
+            event.commit();
         }
 
-        for (int i = 0; i < data.length; i++) {
-            meanSquared = meanSquared + ((data[i][data[0].length - 1] - average) * (data[i][data[0].length - 1] - average));
+        // the split has to remove at least minGain in total - a large node close to errorThreshold keeps splitting
+        // only if that is worth it, whatever its MSE
+        double minGain = root.index.options.minGain;
+        if (splitIndex >= 0 && minGain > 0 && root.splitGain * root.weight < minGain) {
+            return -1;
         }
-        this.meanSquaredError = meanSquared / data.length;
-        
+
+        // -1 if entropy is all the same from splits - would keep splitting on same attribute
+        return splitIndex;
     }
 
     /****
-	 * Method: split
-	 * Description: adds child nodes to current node
+	 * Method: growBestFirst
+	 * Description: grows the tree under root leaf by leaf instead of depth first. Every leaf that could split waits in a
+	 * priority queue ordered by how much impurity its best split removes (splitGain times the leaf's weight), and the
+	 * best one is split next. Growth stops when options.maxLeaves would be exceeded or once options.timeLimitMillis
+	 * have passed - every leaf still waiting is then made a leaf as it is, so the tree can be used whenever growth
+	 * stops. Leaves whose best split removes less than options.minGain aren't queued at all (see findSplit). Without
+	 * limits the tree is the same as generateTree's. Splits are done one at a time, and the time limit is only checked
+	 * between them
 	****/
-    public void split(int splitIndex) {
-        double[][] sortedData = new double[data.length][data[0].length];
-        this.splitIndex = splitIndex;
-
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                sortedData[i][j] = data[i][j];
-            }
+    public static void growBestFirst(Node root, TreeOptions options) {
+        long deadline = System.nanoTime() + options.timeLimitMillis * 1000000;
+        PriorityQueue<LeafCandidate> candidates = new PriorityQueue<LeafCandidate>();
+        int leaves = 1;
+        long created = 0;
+        if (offerCandidate(root, options, candidates, created)) {
+            created++;
         }
 
-        Arrays.sort(sortedData, (row1, row2) -> Double.compare(row1[splitIndex], row2[splitIndex]));
-        
-        if (categoricalAttribute[splitIndex]) {
-            int currentRow = 0;
-            int currentLastRow;
-            for (int i = 0; i < frequency[splitIndex].length; i++) {
-                currentLastRow = currentRow + frequency[splitIndex][i];
-                double[][] childData = new double[currentLastRow - currentRow][data[0].length];
-                int currentChildRow = 0;
-                for (int j = currentRow; j < currentLastRow; j++) {
-                    for (int k = 0; k < data[0].length; k++) {
-                        childData[currentChildRow][k] = sortedData[j][k]; 
-                    }
-                    currentChildRow++;
+        while (!candidates.isEmpty()) {
+            LeafCandidate best = candidates.poll();
+            Node node = best.node;
+            if (options.timeLimitMillis > 0 && System.nanoTime() - deadline >= 0) {
+                // time is up - the rest of the queue stays leaves
+                node.makeLeaf();
+                while (!candidates.isEmpty()) {
+                    candidates.poll().node.makeLeaf();
                 }
-                Node childNode = new Node(childData, this.categoricalAttribute);
-                childNodes.put(sortedData[currentRow][splitIndex], childNode);
-                currentRow = currentLastRow;
+                break;
             }
-        } else {
-            double[][] childDataLeft = new double[splitRow][data[0].length];
-            double[][] childDataRight = new double[data.length - splitRow][data[0].length];
-            for (int i = 0; i < data.length; i++) {
-                if (i >= splitRow) {
-                    for (int j = 0; j < data[0].length; j++) {
-                        childDataRight[i - splitRow][j] = data[i][j];
-                    }
-                } else {
-                    for (int j = 0; j < data[0].length; j++) {
-                        childDataLeft[i][j] = data[i][j];
-                    }
+            int children = node.categoricalAttribute[best.splitIndex] ? node.presentCategories(best.splitIndex) : 2;
+            if (options.maxLeaves > 0 && leaves + children - 1 > options.maxLeaves) {
+                // a split with fewer children may still fit
+                node.makeLeaf();
+                continue;
+            }
+
+            node.split(best.splitIndex);
+            leaves = leaves + node.childNodes.size() - 1;
+            for (Node child : node.childNodes.values()) {
+                if (offerCandidate(child, options, candidates, created)) {
+                    created++;
                 }
             }
-            Node childNodeLeft = new Node(childDataLeft, this.categoricalAttribute);
-            Node childNodeRight = new Node(childDataRight, this.categoricalAttribute);
-            childNodes.put(0.0, childNodeLeft);
-            childNodes.put(1.0, childNodeRight);
         }
     }
 
     /****
-	 * Method: determinesSplitRegression
-	 * Description: determines which attribute to split on based on minimizing MSE
+	 * Method: offerCandidate
+	 * Description: searches for a node's split and queues the node if it has one, otherwise makes it a leaf. Returns
+	 * true if the node was queued
 	****/
-    public int determineSplitRegression() {
-        double[] meanSquaredError = new double[data[0].length - 1];
-        int[] splitRowArray = new int[data[0].length - 1];
-        double[] splitValueArray = new double[data[0].length - 1];
-        
-        // deep copy of data so we can sort it
-        double[][] sortedData = new double[data.length][data[0].length];
-
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                sortedData[i][j] = data[i][j];
-            }
+    private static boolean offerCandidate(Node node, TreeOptions options, PriorityQueue<LeafCandidate> candidates, long order) {
+        int splitIndex = findSplit(node, options.errorThreshold);
+        if (splitIndex == -1) {
+            node.makeLeaf();
+            return false;
         }
+        candidates.add(new LeafCandidate(node, splitIndex, node.splitGain * node.weight, order));
+        return true;
+    }
 
-        for (int column = 0; column < meanSquaredError.length; column++) {
-            final int sortColumn = column;
-            //Arrays.sort(sortedData, (row1, row2) -> Double.compare(row1[data[0].length - 1], row2[data[0].length - 1]));
-            Arrays.sort(sortedData, (row1, row2) -> Double.compare(row1[sortColumn], row2[sortColumn]));
-            //this.printData(sortedData);
-
-            // determine splits if attribute is categorical
-            if (categoricalAttribute[column]) {
-                // find average result based on each attribute value
-                double[] averages = new double[frequency[column].length]; // n = number of unique attributes
-                int currentBin = 0;
-                for (int i = 0; i < data.length; i++) {
-                    averages[currentBin] = averages[currentBin] + sortedData[i][data[0].length - 1] / frequency[column][currentBin];
-
-                    if (i != (data.length - 1) && sortedData[i][column] != sortedData[i + 1][column]) {
-                        currentBin++;
-                    }
-                }
-                // calculate MSE based on averages
-                currentBin = 0;
-                for (int i = 0; i < data.length; i++) {
-                    double currentMSE = (sortedData[i][data[0].length - 1] - averages[currentBin]) * (sortedData[i][data[0].length - 1] - averages[currentBin]);
-                    meanSquaredError[column] = meanSquaredError[column] + currentMSE;
-
-                    if (i != (data.length - 1) && sortedData[i][column] != sortedData[i + 1][column]) {
-                        currentBin++;
-                    }
-                
-                }
-            } else { // numeric attribute
-                int middleIndex = sortedData.length / 2;
-                splitRowArray[column] = middleIndex;
-                // set the value on which to split as the average of the two adjacent rows
-                splitValueArray[column] = (sortedData[middleIndex - 1][column] + sortedData[middleIndex][column]) / 2;
-                double lowAverage = 0; // left split average
-                double highAverage = 0; // right split average
-                for (int i = 0; i < sortedData.length; i++) {
-                    if (i >= middleIndex) {
-                        highAverage = highAverage + sortedData[i][sortedData[0].length - 1] / (sortedData.length - middleIndex);
-                    } else {
-                        lowAverage = lowAverage + sortedData[i][sortedData[0].length - 1] / middleIndex;
-                    }
-                }
-
-                for (int i = 0; i < sortedData.length; i++) {
-                    double currentMSE;
-                    if (i >= middleIndex) {
-                        currentMSE = (sortedData[i][data[0].length - 1] - highAverage) * (sortedData[i][data[0].length - 1] - highAverage);
-                    } else {
-                        currentMSE = (sortedData[i][data[0].length - 1] - lowAverage) * (sortedData[i][data[0].length - 1] - lowAverage);
-                    }
-                    meanSquaredError[column] = meanSquaredError[column] + currentMSE;
-                }
-
-            }
-            meanSquaredError[column] = meanSquaredError[column] / sortedData.length;
-        
+    /****
+	 * Class: LeafCandidate
+	 * Description: a leaf waiting to be split by growBestFirst. The largest gain comes first, and equal gains in the
+	 * order the leaves were queued, so the tree doesn't depend on the queue's internals
+	****/
+    static class LeafCandidate implements Comparable<LeafCandidate> {
+        final Node node;
+        final int splitIndex;
+        final double gain; // impurity removed by the split - splitGain times the node's weight
+        final long order;
+
+        LeafCandidate(Node node, int splitIndex, double gain, long order) {
+            this.node = node;
+            this.splitIndex = splitIndex;
+            this.gain = gain;
+            this.order = order;
         }
 
-        // find minimum mean squared error
-        int splitIndex = 0;
-        double minMSE = meanSquaredError[0];
-        boolean allSameMSE = true;
-        for (int i = 1; i < meanSquaredError.length; i++) {
-            if (meanSquaredError[i] < minMSE) {
-                splitIndex = i;
-                minMSE = meanSquaredError[i];
+        @Override
+        public int compareTo(LeafCandidate other) {
+            int byGain = Double.compare(other.gain, gain);
+            if (byGain != 0) {
+                return byGain;
             }
-
-            // determine if all of the splits are identical - this will result in infinite loop
-            double currentMSE = Math.round(meanSquaredError[i] * 10000); // round off a few decimal places - I ws getting weird comparision issues that I think relates to how java stores doubles
-            double currentMinMSE = Math.round(minMSE * 10000);
-            if (allSameMSE && (currentMSE != currentMinMSE)) {
-                allSameMSE = false;
-            }
-        }
-
-        // determine the row we should split on and the comparison value for moving forward
-        if (!categoricalAttribute[splitIndex]) {
-            this.splitRow = splitRowArray[splitIndex];
-            this.splitValue = splitValueArray[splitIndex];
-        }
-
-        if (allSameMSE) {
-            splitIndex = -1;
+            return Long.compare(order, other.order);
         }
-        
-        return splitIndex;
     }
 
     /****
-	 * Method: determineSplitClassification
-	 * Description: determines the split attribute for classification data sets. Maximizes the gain ratio
+	 * Class: SubtreeTask
+	 * Description: fork/join task that grows the subtree under one node. Sibling subtrees own disjoint slices of the
+	 * training index once their parent has split, so they are built as separate tasks. Nodes below the row cutoff
+	 * are grown serially
 	****/
-    public int determineSplitClassification() {
-        double[] featureEntropy = new double[data[0].length - 1];
-        double[] gainRatio = new double[data[0].length - 1];
-
-        // deep copy of data so we can sort it
-        double[][] sortedData = new double[data.length][data[0].length];
-
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                sortedData[i][j] = data[i][j];
-            }
+    static class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final Node node;
+        final double errorThreshold;
+        final int parallelCutoff;
+
+        SubtreeTask(Node node, double errorThreshold, int parallelCutoff) {
+            this.node = node;
+            this.errorThreshold = errorThreshold;
+            this.parallelCutoff = parallelCutoff;
         }
 
-        for (int column = 0; column < gainRatio.length; column++) {
-            int categoryIndex = 0; // index in frequency array
-            double currentEntropy = 0;
-            int currentCount = 1;
-
-            final int sortColumn = column;
-            Arrays.sort(sortedData, (row1, row2) -> Double.compare(row1[data[0].length - 1], row2[data[0].length - 1]));
-            Arrays.sort(sortedData, (row1, row2) -> Double.compare(row1[sortColumn], row2[sortColumn]));
-
-            for (int i = 0; i < (data.length - 1); i++) {
-                // if not the same category - go to next one
-                if (sortedData[i][column] != sortedData[i + 1][column]) {
-                    double currentFrequency = (double) currentCount / this.frequency[column][categoryIndex];
-                    currentEntropy = currentEntropy - (currentFrequency * Math.log(currentFrequency));
-                    featureEntropy[column] = featureEntropy[column] + (((double) this.frequency[column][categoryIndex] / data.length)* currentEntropy);
-                    currentEntropy = 0;
-                    currentCount = 1;
-                    categoryIndex++;
-                } else { // same category - calculate entropy for split
-                    // if the class of the current row is not equal to the next 
-                    if (sortedData[i][data[0].length - 1] != sortedData[i + 1][data[0].length - 1]) {
-                        double currentFrequency = (double) currentCount / this.frequency[column][categoryIndex];
-                        currentEntropy = currentEntropy - (currentFrequency * Math.log(currentFrequency)); 
-                        currentCount = 1;
-                    } else {
-                        currentCount++;
-                    }
-                }
-
-                // clean up if last iteration
-                if (i == data.length - 2) {
-                    double currentFrequency = (double) currentCount / this.frequency[column][categoryIndex];
-                    currentEntropy = currentEntropy - (currentFrequency * Math.log(currentFrequency));
-                    featureEntropy[column] = featureEntropy[column] + (((double) this.frequency[column][categoryIndex] / data.length)* currentEntropy);
-                } 
-            }
-            // calculate information value
-            double currentInformationValue = 0;
-            for (int i = 0; i < frequency[column].length; i++) {
-                currentInformationValue = currentInformationValue - (((double) frequency[column][i] / data.length) * Math.log((double) frequency[column][i] / data.length));
-            }
-            // if all same value, no information  gain
-            if (currentInformationValue == 0) {
-                gainRatio[column] = 0;
-            } else {
-                gainRatio[column] = (this.entropy - featureEntropy[column]) / currentInformationValue;
-            }
-            
-        }
-
-        int splitIndex = 0;
-        double minEntropy = featureEntropy[0];
-        boolean allSameEntropy = true;
-        double maxGainRatio = gainRatio[0];
-        for (int i = 1; i < featureEntropy.length; i++) {
-            // find max gain ratio
-            if (gainRatio[i] > maxGainRatio) {
-                splitIndex = i;
-                maxGainRatio = gainRatio[i];
-            }
-    
-            // determine if all of the splits are identical - this will result in infinite loop
-            if (featureEntropy[i] < minEntropy) {
-                
-                minEntropy = featureEntropy[i];
+        @Override
+        protected void compute() {
+            if (node.getRowCount() < parallelCutoff) {
+                generateTree(node, "", errorThreshold);
+                return;
             }
-
-            if (allSameEntropy && featureEntropy[i] != minEntropy) {
-                allSameEntropy = false;
+            if (growNode(node, errorThreshold)) {
+                List<SubtreeTask> children = new ArrayList<SubtreeTask>();
+                for (Node child : node.childNodes.values()) {
+                    children.add(new SubtreeTask(child, errorThreshold, parallelCutoff));
+                }
+                invokeAll(children);
             }
         }
-
-        if (allSameEntropy) {
-            splitIndex = -1;
-        }
-
-        return splitIndex;
     }
-
+    
     /****
-	 * Method: makeLeaf
-	 * Description: makes a node into a leaf when we won't split anymore
+	 * Method: pruneTree
+	 * Description: prunes classification trees. Recursively traverses tree and sees if removing the node helps the performance based on a pruning set
 	****/
-    public void makeLeaf() {
-        this.isLeaf = true;
-
-        // determine leaf value
-        int rows = data.length;
-        int columns = data[0].length;
-        double[] sortedY = new double[rows];
-
-        for (int i = 0; i < rows; i++) {
-            sortedY[i] = data[i][columns - 1];
-        }
-
-        Arrays.sort(sortedY);
-
-        if (categoricalAttribute[categoricalAttribute.length - 1]) {
-            // find the majority category
-            int maxCount = 1;
-            double maxValue = sortedY[0];
-            int currentCount = 1;
-            for (int i = 0; i < (rows - 1); i++) {
-                if (sortedY[i] == sortedY[i + 1]) {
-                    currentCount++;
-                    if (currentCount > maxCount) {
-                        maxCount = currentCount;
-                        maxValue = sortedY[i];
-                    }
-                } else {
-                    currentCount = 1;
-                }
+    public static void pruneTree(Node currentNode, Node root, Dataset pruneData, int dataSetNumber) {
+        // stopping case if leaf
+        if (currentNode.isLeaf) {
+            return;
+        } else {
+            // recur for each child node
+            for (Map.Entry<Double, Node> entry: currentNode.childNodes.entrySet()) {
+                pruneTree(entry.getValue(), root, pruneData, dataSetNumber);
             }
 
-            this.leafValue = maxValue;
-        } else { //leaf = average for regression
-            double sum = 0;
-            for (int i = 0; i < rows; i++) {
-                sum = sum + data[i][data[0].length - 1];
-            }
-            this.leafValue = sum / rows;
-        }
+            double[] results = new double[pruneData.rows];
+            int[] kFoldArray = new int[pruneData.rows]; 
+            // evaluate performance for existing pruned and with current node pruned
+            evaluateTree(root, pruneData, -1, kFoldArray, results);
+            double currentPerformance = DataStream.calculatePerformance(dataSetNumber, results, pruneData);
+
+            // prune the node
+            currentNode.isPruned = true;
+
+            evaluateTree(root, pruneData, -1, kFoldArray, results);
+            double prunedPerformance = DataStream.calculatePerformance(dataSetNumber, results, pruneData);
 
+            // if pruning makes tree worse, revert it to not pruned
+            if (prunedPerformance < currentPerformance) {
+                currentNode.isPruned = false;
+            } 
+            return;
+        }
     }
 
     /****
-	 * Method: noPossibleSplit
-	 * Description: used to determine if there is no split that reduces entropy
+	 * Method: reducedErrorPrune
+	 * Description: prunes classification trees with the same decisions as pruneTree, in one pass. The prune rows are
+	 * routed down the tree once, and each node compares how many of its rows it gets right as a subtree against as a
+	 * leaf (the prediction evaluateTree falls back to at a pruned node). Children are decided before their parent, and
+	 * a tie prunes, as in pruneTree
 	****/
-    public boolean noPossibleSplit() {
-        boolean noPossibleSplit = true;
-        int row = 0;
-        int rows = data.length;
-        int columns = data[0].length;
-
-        while (row < (rows - 1) && noPossibleSplit) {
-            int column = 0;
-            while (column < (columns - 1) && noPossibleSplit) {
-                if (data[row][column] != data[row + 1][column]) {
-                    noPossibleSplit = false;
-                }
-                column++;
-            }
-            row++;
+    public static void reducedErrorPrune(Node root, Dataset pruneData) {
+        TreeEvents.PruneEvent event = new TreeEvents.PruneEvent();
+        event.begin();
+        int[] rows = new int[pruneData.rows];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        pruneSubtree(root, pruneData, rows, 0, rows.length, root.mostFrequentClass, new int[rows.length], new int[rows.length]);
+        event.end();
+        if (event.shouldCommit()) {
+            event.pruneRows = pruneData.rows;
+            event.commit();
         }
-
-        return noPossibleSplit;
     }
 
     /****
-	 * Method: calculateFrequency
-	 * Description: Populates the frequency array based on the frequency of each value for an attribute. Used to help calculate entropy
+	 * Method: pruneSubtree
+	 * Description: decides pruning for the subtree under a node, given the prune rows in rows[start, end) that reach it
+	 * and the value a pruned node predicts there. Returns how many of those rows the subtree gets right afterwards
 	****/
-    private void calculateFrequency() {
-        frequency = new int[data[0].length][];
-        for (int column = 0; column < data[0].length; column++) {
-            if (categoricalAttribute[column]) {
-                double[] sortedData = new double[data.length];
-                for (int i = 0; i < data.length; i++) {
-                    sortedData[i] = data[i][column];
-                }
-                Arrays.sort(sortedData);
-
-                int uniqueCount = 1;
-                for (int i = 0; i < (sortedData.length - 1); i++) {
-                    if (sortedData[i] != sortedData[i + 1]) {
-                        uniqueCount++;
-                    }
-                }
-                frequency[column] = new int[uniqueCount];
-
-                // class label - save off most frequent class label - used if there is no matching child node when testing data
-                if (column == (data[0].length - 1)) {
-                    int maxCount = 1;
-                    double maxValue = sortedData[0];
-                    int currentCount = 1;
-                    for (int i = 0; i < (sortedData.length - 1); i++) {
-                        if (sortedData[i] != sortedData[i + 1]) {
-                            currentCount = 1;
-                        } else {
-                            currentCount++;
-                            if (currentCount > maxCount) {
-                                maxCount = currentCount;
-                                maxValue = sortedData[i];
-                            }
-                        }
-                    }
-                    this.mostFrequentClass = maxValue;
-                }
-
-                // determine the frequency of each value
-                int currentValueCount = 1;
-                int currentIndex = 0;
-                for (int i = 0; i < (sortedData.length - 1); i++) {
-                    if (sortedData[i] != sortedData[i + 1]) {
-                        frequency[column][currentIndex] = currentValueCount;
-                        currentIndex++;
-                        currentValueCount = 1;
-                    } else {
-                        currentValueCount++;
-                    } 
-                    if (i == (sortedData.length - 2)) {
-                        frequency[column][currentIndex] = currentValueCount;
+    private static int pruneSubtree(Node node, Dataset pruneData, int[] rows, int start, int end, double fallback, int[] rowChild, int[] buffer) {
+        double[] labels = pruneData.labels;
+        if (node.isLeaf) {
+            return countCorrect(labels, rows, start, end, node.leafValue);
+        }
+        int correctAsLeaf = countCorrect(labels, rows, start, end, fallback);
+
+        // which child each row goes to - children.length means the row stops here on a category with no child
+        Node[] children = new Node[node.childNodes.size()];
+        double[] keys = new double[children.length];
+        int c = 0;
+        for (Map.Entry<Double, Node> entry : node.childNodes.entrySet()) {
+            keys[c] = entry.getKey();
+            children[c] = entry.getValue();
+            c++;
+        }
+        boolean categorical = node.categoricalAttribute[node.splitIndex];
+        int[] childCount = new int[children.length + 1];
+        for (int i = start; i < end; i++) {
+            int child = children.length;
+            if (node.isPruned) {
+                // already pruned by an earlier call - pruneTree sends no rows below it either
+            } else if (categorical) {
+                for (int k = 0; k < keys.length; k++) {
+                    if (keys[k] == pruneData.value(node.splitIndex, rows[i])) {
+                        child = k;
+                        break;
                     }
                 }
+            } else {
+                double key = (pruneData.value(node.splitIndex, rows[i]) <= node.splitValue) ? 0.0 : 1.0;
+                child = (keys[0] == key) ? 0 : 1;
             }
+            rowChild[rows[i]] = child;
+            childCount[child]++;
         }
-    }
 
-    public void printTree(String offset) {
-        if (this.isLeaf) {
-            System.out.println(offset + "Leaf value = " + this.leafValue);
-        } else if (this.isPruned) {
-            System.out.println(offset + "Leaf value = " + this.mostFrequentClass);
-        } else {
-            System.out.println(offset + "Split on attribute " + splitIndex);
+        // stable counting partition of the slice by child
+        int[] childStart = new int[children.length + 2];
+        childStart[0] = start;
+        for (int k = 0; k <= children.length; k++) {
+            childStart[k + 1] = childStart[k] + childCount[k];
+        }
+        int[] next = Arrays.copyOf(childStart, children.length + 1);
+        for (int i = start; i < end; i++) {
+            buffer[next[rowChild[rows[i]]]++] = rows[i];
+        }
+        System.arraycopy(buffer, start, rows, start, end - start);
 
-            // loop over children and generate a tree from each child
-            for (Map.Entry<Double, Node> entry: this.childNodes.entrySet()) {
-                if (this.categoricalAttribute[splitIndex]) { // splitting on a category attribute
-                    System.out.println(offset + "Split value: " + entry.getKey());
-                } else {
-                    if (entry.getKey() == 0.0) { // left split
-                        System.out.println(offset + "Split value < " + this.splitValue);
-                    } else {
-                        System.out.println(offset + "Split value > " + this.splitValue);
-                    }
-                }
-                entry.getValue().printTree(offset + "   ");
+        int correctAsSubtree;
+        if (node.isPruned) {
+            correctAsSubtree = correctAsLeaf;
+        } else {
+            correctAsSubtree = countCorrect(labels, rows, childStart[children.length], end, node.mostFrequentClass);
+        }
+        double childFallback = categorical ? node.mostFrequentClass : fallback;
+        for (int k = 0; k < children.length; k++) {
+            int childCorrect = pruneSubtree(children[k], pruneData, rows, childStart[k], childStart[k + 1], childFallback, rowChild, buffer);
+            if (!node.isPruned) {
+                correctAsSubtree = correctAsSubtree + childCorrect;
             }
         }
+
+        node.isPruned = correctAsLeaf >= correctAsSubtree;
+        TreeEvents.PruneDecisionEvent event = new TreeEvents.PruneDecisionEvent();
+        if (event.shouldCommit()) {
+            event.depth = node.depth;
+            event.rows = end - start;
+            event.correctAsLeaf = correctAsLeaf;
+            event.correctAsSubtree = correctAsSubtree;
+            event.pruned = node.isPruned;
+            event.commit();
+        }
+        return node.isPruned ? correctAsLeaf : correctAsSubtree;
     }
 
-    /****
-	 * Method: printData
-	 * Description: prints an array
-	****/
-    public void printData(double[][] newData) {
-        System.out.print("\n");
-        for (int i = 0; i < newData.length; i++) {
-            for (int j = 0; j < newData[i].length; j++) {
-                System.out.print(newData[i][j] + " ");
+    private static int countCorrect(double[] labels, int[] rows, int start, int end, double prediction) {
+        int correct = 0;
+        for (int i = start; i < end; i++) {
+            if (labels[rows[i]] == prediction) {
+                correct++;
             }
-            System.out.print("\n");
         }
+        return correct;
     }
-
-    }
\ No newline at end of file
+}
@@ -0,0 +1,425 @@
+import java.util.Arrays;
+import java.util.Collection;
+
+/****
+ * Class: HistogramSplitter
+ * Description: histogram based split search. Each numeric attribute is quantized into at most 256 bins once per tree
+ * and each categorical attribute gets one bin per category. Every node keeps per-bin label statistics for all
+ * attributes, so finding a split scans bins instead of rows. When a node splits, only the smaller children are
+ * scanned - the largest child's histogram is the parent's minus its siblings'
+****/
+class HistogramSplitter {
+    static final int MAX_BINS = 256;
+
+    final boolean classification;
+    final boolean[] categoricalAttribute;
+    final byte[][] binCodes; // [column][row] - bin of each value, read as unsigned. null for a splitter over streamed data
+    final int[] binCount; // number of bins for each column
+    final double[][] cutValues; // numeric columns - split value between bin b and bin b + 1
+    final double[] labels; // null for a splitter over streamed data
+    final int[] labelClass; // classification - index into classes for each row. null for a splitter over streamed data
+    final double[] classes; // classification - distinct labels, sorted
+    final double labelMean; // regression - labels are centered on the training set mean before they are summed
+
+    /****
+	 * Class: Histogram
+	 * Description: label statistics of one node for every bin of every attribute
+	****/
+    static class Histogram {
+        final int[][] counts; // regression: [column][bin] weight. classification: [column][bin * classes + class] weight
+        final double[][] sums; // regression only: [column][bin] sum of centered labels
+        double totalSum; // regression only: sum of centered labels over the node
+        double totalSquares; // regression only: sum of squared centered labels over the node
+
+        Histogram(int[] binCount, int classCount, boolean classification) {
+            counts = new int[binCount.length][];
+            sums = classification ? null : new double[binCount.length][];
+            for (int column = 0; column < binCount.length; column++) {
+                counts[column] = new int[binCount[column] * classCount];
+                if (!classification) {
+                    sums[column] = new double[binCount[column]];
+                }
+            }
+        }
+    }
+
+    /****
+	 * Method: HistogramSplitter constructor
+	 * Description: bins every attribute of a tree's training data. Numeric bins are cut from the values of the index's
+	 * rows, and every row of the data gets a bin code. Categorical attributes must be dictionary encoded, and may have
+	 * at most 256 categories
+	****/
+    HistogramSplitter(TrainingIndex index) {
+        Dataset data = index.data;
+        boolean[] categoricalAttribute = index.categoricalAttribute;
+        int columns = data.attributes.length;
+        this.classification = categoricalAttribute[categoricalAttribute.length - 1];
+        this.categoricalAttribute = categoricalAttribute;
+        this.labels = data.labels;
+        this.binCodes = new byte[columns][];
+        this.binCount = new int[columns];
+        this.cutValues = new double[columns][];
+
+        for (int column = 0; column < columns; column++) {
+            if (categoricalAttribute[column]) {
+                // the category codes of an encoded column are already its bins
+                if (data.byteCodes[column] == null) {
+                    throw new IllegalArgumentException("attribute " + column + " has " + data.getCardinality(column) + " categories, histogram training supports at most " + MAX_BINS);
+                }
+                binCodes[column] = data.byteCodes[column];
+                binCount[column] = data.getCardinality(column);
+            } else {
+                binColumn(column, data.attributes[column], index.rowIndex);
+            }
+        }
+
+        // labels are read through the index's class numbering and label mean
+        classes = index.classes;
+        labelClass = index.labelClass;
+        labelMean = index.labelMean;
+    }
+
+    /****
+	 * Method: HistogramSplitter constructor
+	 * Description: bins for data that isn't held in memory - the out-of-core trainer bins each value with bin() as it
+	 * streams past and builds the histograms itself. Numeric attributes are binned from a sorted sample of their
+	 * values, categorical attributes have one bin per dictionary entry and may have at most 256
+	****/
+    HistogramSplitter(boolean[] categoricalAttribute, double[][] sortedSamples, int[] cardinality, double[] classes, double labelMean) {
+        int columns = categoricalAttribute.length - 1;
+        this.classification = categoricalAttribute[columns];
+        this.categoricalAttribute = categoricalAttribute;
+        this.labels = null;
+        this.labelClass = null;
+        this.binCodes = null;
+        this.binCount = new int[columns];
+        this.cutValues = new double[columns][];
+        this.classes = classes;
+        this.labelMean = labelMean;
+
+        for (int column = 0; column < columns; column++) {
+            if (categoricalAttribute[column]) {
+                if (cardinality[column] > MAX_BINS) {
+                    throw new IllegalArgumentException("attribute " + column + " has " + cardinality[column] + " categories, histogram training supports at most " + MAX_BINS);
+                }
+                binCount[column] = cardinality[column];
+            } else {
+                binBoundaries(column, sortedSamples[column]);
+            }
+        }
+    }
+
+    /****
+	 * Method: binColumn
+	 * Description: assigns every value of a numeric column to a bin, with the bins cut from the values of the given rows
+	****/
+    private void binColumn(int column, double[] values, int[] rows) {
+        double[] sortedValues = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sortedValues[i] = values[rows[i]];
+        }
+        Arrays.sort(sortedValues);
+        TreeEvents.sortsPerformed.increment();
+        binBoundaries(column, sortedValues);
+
+        byte[] codes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            codes[i] = (byte) bin(column, values[i]);
+        }
+        binCodes[column] = codes;
+    }
+
+    /****
+	 * Method: binBoundaries
+	 * Description: sets the bins of a numeric column from its sorted values. Columns with more than 256 distinct values
+	 * get bins holding roughly equal numbers of rows - equal values always share a bin
+	****/
+    private void binBoundaries(int column, double[] sortedValues) {
+        int rows = sortedValues.length;
+        int distinctCount = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i == (rows - 1) || sortedValues[i] != sortedValues[i + 1]) {
+                distinctCount++;
+            }
+        }
+
+        // close a bin at a change of value once it holds enough rows - at most 256 bins
+        double[] binMax = new double[Math.min(distinctCount, MAX_BINS)]; // largest value in each bin
+        double[] binMin = new double[binMax.length]; // smallest value in each bin
+        int rowsPerBin = (distinctCount <= MAX_BINS) ? 1 : (rows / MAX_BINS) + 1;
+        int bins = 0;
+        int inBin = 0;
+        binMin[0] = sortedValues[0];
+        for (int i = 0; i < rows; i++) {
+            inBin++;
+            if (i == (rows - 1) || (sortedValues[i] != sortedValues[i + 1] && inBin >= rowsPerBin)) {
+                binMax[bins] = sortedValues[i];
+                bins++;
+                inBin = 0;
+                if (i < (rows - 1)) {
+                    binMin[bins] = sortedValues[i + 1];
+                }
+            }
+        }
+        binCount[column] = bins;
+        cutValues[column] = new double[bins - 1];
+        for (int b = 0; b < (bins - 1); b++) {
+            cutValues[column][b] = Node.cutValue(binMax[b], binMin[b + 1]);
+        }
+    }
+
+    /****
+	 * Method: bin
+	 * Description: bin of a numeric value - the first bin whose cut value is >= the value, so a value is in a bin at
+	 * or left of bin b exactly when it is <= cutValues[column][b]. Values outside the binned range land in the end bins
+	****/
+    int bin(int column, double value) {
+        double[] cuts = cutValues[column];
+        int low = 0;
+        int high = cuts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cuts[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /****
+	 * Method: build
+	 * Description: scans the node's rows once per attribute and returns its histogram
+	****/
+    Histogram build(Node node) {
+        int classCount = classification ? classes.length : 1;
+        Histogram histogram = new Histogram(binCount, classCount, classification);
+        int[] rowIndex = node.rowIndex;
+        int[] rowWeight = node.index.rowWeight;
+        long bytes = TreeEvents.arrayBytes(binCodes.length, 4) * (classification ? 1 : 2);
+        for (int column = 0; column < binCodes.length; column++) {
+            bytes = bytes + TreeEvents.arrayBytes(histogram.counts[column].length, 4);
+            if (!classification) {
+                bytes = bytes + TreeEvents.arrayBytes(histogram.sums[column].length, 8);
+            }
+        }
+        TreeEvents.nodeBytesAllocated.add(bytes);
+        TreeEvents.rowsScanned.add((long) node.getRowCount() * binCodes.length);
+
+        for (int column = 0; column < binCodes.length; column++) {
+            byte[] codes = binCodes[column];
+            int[] counts = histogram.counts[column];
+            if (classification) {
+                for (int i = node.start; i < node.end; i++) {
+                    int row = rowIndex[i];
+                    counts[(codes[row] & 0xFF) * classCount + labelClass[row]] += rowWeight[row];
+                }
+            } else {
+                double[] sums = histogram.sums[column];
+                for (int i = node.start; i < node.end; i++) {
+                    int row = rowIndex[i];
+                    int bin = codes[row] & 0xFF;
+                    counts[bin] += rowWeight[row];
+                    sums[bin] = sums[bin] + rowWeight[row] * (labels[row] - labelMean);
+                }
+            }
+        }
+
+        if (!classification) {
+            for (int i = node.start; i < node.end; i++) {
+                int w = rowWeight[rowIndex[i]];
+                double y = labels[rowIndex[i]] - labelMean;
+                histogram.totalSum = histogram.totalSum + w * y;
+                histogram.totalSquares = histogram.totalSquares + w * y * y;
+            }
+        }
+        return histogram;
+    }
+
+    /****
+	 * Method: splitHistogram
+	 * Description: gives every child of a node that was just split its histogram. The largest child reuses the
+	 * parent's histogram minus the others, so its rows are never scanned
+	****/
+    void splitHistogram(Node parent) {
+        Collection<Node> children = parent.childNodes.values();
+        Node largest = null;
+        for (Node child : children) {
+            if (largest == null || child.getRowCount() > largest.getRowCount()) {
+                largest = child;
+            }
+        }
+
+        Histogram remainder = parent.histogram;
+        for (Node child : children) {
+            if (child == largest) {
+                continue;
+            }
+            child.histogram = build(child);
+            for (int column = 0; column < binCodes.length; column++) {
+                int[] counts = remainder.counts[column];
+                int[] childCounts = child.histogram.counts[column];
+                for (int b = 0; b < counts.length; b++) {
+                    counts[b] = counts[b] - childCounts[b];
+                }
+                if (!classification) {
+                    double[] sums = remainder.sums[column];
+                    double[] childSums = child.histogram.sums[column];
+                    for (int b = 0; b < sums.length; b++) {
+                        sums[b] = sums[b] - childSums[b];
+                    }
+                }
+            }
+            remainder.totalSum = remainder.totalSum - child.histogram.totalSum;
+            remainder.totalSquares = remainder.totalSquares - child.histogram.totalSquares;
+        }
+        largest.histogram = remainder;
+        parent.histogram = null;
+    }
+
+    /****
+	 * Method: regressionError
+	 * Description: histogram version of Node.regressionError - MSE after splitting the node on one attribute, or
+	 * Double.MAX_VALUE if the attribute can't split it
+	****/
+    double regressionError(Node node, int column, double[] splitValueArray) {
+        return regressionError(node.histogram, node.weight, column, splitValueArray);
+    }
+
+    /****
+	 * Method: regressionError
+	 * Description: MSE after splitting a node with the given histogram and total weight on one attribute, or
+	 * Double.MAX_VALUE if the attribute can't split it
+	****/
+    double regressionError(Histogram histogram, int rows, int column, double[] splitValueArray) {
+        int[] counts = histogram.counts[column];
+        double[] sums = histogram.sums[column];
+
+        if (categoricalAttribute[column]) {
+            // squared error of predicting each category's mean = total squares - sum over categories of sum^2 / count
+            double explained = 0;
+            int categories = 0;
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] > 0) {
+                    explained = explained + sums[b] * sums[b] / counts[b];
+                    categories++;
+                }
+            }
+            if (categories < 2) {
+                return Double.MAX_VALUE;
+            }
+            return Math.max(histogram.totalSquares - explained, 0) / rows;
+        }
+
+        int leftCount = 0;
+        double leftSum = 0;
+        double bestError = Double.MAX_VALUE;
+        for (int b = 0; b < (counts.length - 1); b++) {
+            if (counts[b] == 0) {
+                continue; // same cut as the previous non-empty bin
+            }
+            leftCount = leftCount + counts[b];
+            leftSum = leftSum + sums[b];
+            if (leftCount == rows) {
+                break;
+            }
+            double rightSum = histogram.totalSum - leftSum;
+            double error = histogram.totalSquares - (leftSum * leftSum / leftCount) - (rightSum * rightSum / (rows - leftCount));
+            if (error < bestError) {
+                bestError = error;
+                splitValueArray[column] = cutValues[column][b];
+            }
+        }
+
+        if (bestError == Double.MAX_VALUE) {
+            return Double.MAX_VALUE;
+        }
+        return Math.max(bestError, 0) / rows;
+    }
+
+    /****
+	 * Method: scoreClassification
+	 * Description: histogram version of Node.scoreClassification - fills in the entropy and gain ratio of splitting
+	 * the node on one attribute
+	****/
+    void scoreClassification(Node node, int column, double[] featureEntropy, double[] gainRatio, double[] splitValueArray) {
+        scoreClassification(node.histogram, node.weight, node.entropy, column, featureEntropy, gainRatio, splitValueArray);
+    }
+
+    /****
+	 * Method: scoreClassification
+	 * Description: fills in the entropy and gain ratio of splitting a node with the given histogram, total weight and
+	 * entropy on one attribute
+	****/
+    void scoreClassification(Histogram histogram, int rows, double entropy, int column, double[] featureEntropy, double[] gainRatio, double[] splitValueArray) {
+        int classCount = classes.length;
+        int[] counts = histogram.counts[column];
+        int bins = binCount[column];
+
+        if (categoricalAttribute[column]) {
+            // the histogram is the category x class count table
+            int[] branchSize = new int[bins];
+            int branches = 0;
+            double currentFeatureEntropy = 0;
+            for (int b = 0; b < bins; b++) {
+                int binTotal = 0;
+                for (int c = 0; c < classCount; c++) {
+                    binTotal = binTotal + counts[b * classCount + c];
+                }
+                if (binTotal == 0) {
+                    continue;
+                }
+
+                double currentEntropy = 0;
+                for (int c = 0; c < classCount; c++) {
+                    if (counts[b * classCount + c] > 0) {
+                        double currentFrequency = (double) counts[b * classCount + c] / binTotal;
+                        currentEntropy = currentEntropy - (currentFrequency * Math.log(currentFrequency));
+                    }
+                }
+                currentFeatureEntropy = currentFeatureEntropy + (((double) binTotal / rows)* currentEntropy);
+                branchSize[branches] = binTotal;
+                branches++;
+            }
+            featureEntropy[column] = currentFeatureEntropy;
+            gainRatio[column] = Node.gainRatio(entropy, currentFeatureEntropy, Arrays.copyOf(branchSize, branches), rows);
+            return;
+        }
+
+        // numeric attribute - binary split at the bin boundary with the lowest entropy
+        int[] classTotals = new int[classCount];
+        for (int b = 0; b < bins; b++) {
+            for (int c = 0; c < classCount; c++) {
+                classTotals[c] = classTotals[c] + counts[b * classCount + c];
+            }
+        }
+        int[] leftCounts = new int[classCount];
+        int leftCount = 0;
+        int bestLeftCount = rows;
+        double bestEntropy = entropy; // no cut - all rows on one side
+        for (int b = 0; b < (bins - 1); b++) {
+            int binTotal = 0;
+            for (int c = 0; c < classCount; c++) {
+                leftCounts[c] = leftCounts[c] + counts[b * classCount + c];
+                binTotal = binTotal + counts[b * classCount + c];
+            }
+            if (binTotal == 0) {
+                continue; // same cut as the previous non-empty bin
+            }
+            leftCount = leftCount + binTotal;
+            if (leftCount == rows) {
+                break;
+            }
+            double currentEntropy = Node.splitEntropy(leftCounts, classTotals, leftCount, rows);
+            if (currentEntropy < bestEntropy) {
+                bestEntropy = currentEntropy;
+                bestLeftCount = leftCount;
+                splitValueArray[column] = cutValues[column][b];
+            }
+        }
+
+        featureEntropy[column] = bestEntropy;
+        gainRatio[column] = Node.gainRatio(entropy, bestEntropy, new int[] {bestLeftCount, rows - bestLeftCount}, rows);
+    }
+}
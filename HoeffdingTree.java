@@ -0,0 +1,418 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/****
+ * Class: HoeffdingTree
+ * Description: online classification tree (a Hoeffding tree) that learns one row at a time. Each leaf keeps the binned
+ * class counts of every attribute - a HistogramSplitter histogram - and every options.gracePeriod rows it scores its
+ * attributes with the same entropy and gain ratio code as batch histogram training. The leaf splits on the best
+ * attribute once the Hoeffding bound says its lead over the runner up (or over not splitting) isn't chance, or once
+ * the bound is below options.tieThreshold. Learning a row walks to its leaf and adds one count per attribute, so its
+ * cost doesn't grow with the rows seen, and the tree can be queried or compiled between any two rows. It is not
+ * thread safe - score from another thread with a compiled snapshot
+ *
+ * The numeric bins, category dictionaries and classes come from a template batch. A category missing from the
+ * template gets its own bin at a leaf and goes no further at a split on that attribute, and a row of an unknown class
+ * is rejected
+****/
+public class HoeffdingTree {
+    static final int BATCH_ROWS = 100000; // main - rows the batch tree it compares against is grown from
+    final boolean[] categoricalAttribute;
+    final double[][] dictionary; // categorical attributes - sorted category values from the template
+    final double[] classes; // sorted
+    final HistogramSplitter splitter;
+    final TreeOptions options;
+    final int columns;
+    final HoeffdingNode root;
+    long rowsLearned = 0;
+    int nodeCount = 1;
+    int leafCount = 1;
+
+    /****
+	 * Class: HoeffdingNode
+	 * Description: a leaf that is still learning, or a split. A split keeps the class counts it had as a leaf, which
+	 * it predicts from for a category it has no child for
+	****/
+    static class HoeffdingNode {
+        final int depth;
+        final int[] classCounts;
+        final double fallback; // prediction until the leaf has seen a row - the majority class of its parent
+        HistogramSplitter.Histogram histogram; // leaves only
+        int weight; // rows seen
+        int sinceCheck; // rows seen since the last split check
+        int splitIndex = -1; // attribute a split tests, -1 for a leaf
+        double splitValue; // numeric splits - values <= this go to children[0]
+        HoeffdingNode[] children; // numeric splits: left and right. categorical splits: one per dictionary code
+
+        HoeffdingNode(int depth, int classCount, double fallback) {
+            this.depth = depth;
+            this.classCounts = new int[classCount];
+            this.fallback = fallback;
+        }
+    }
+
+    /****
+	 * Method: HoeffdingTree constructor
+	 * Description: takes the numeric bins, category dictionaries and classes from a template batch of the stream. The
+	 * template's rows are not learned - pass them to learn as well if they should be
+	****/
+    HoeffdingTree(Dataset template, boolean[] categoricalAttribute, TreeOptions options) {
+        if (!categoricalAttribute[categoricalAttribute.length - 1]) {
+            throw new IllegalArgumentException("the Hoeffding tree learns classification data sets only");
+        }
+        Dataset data = template.encode(categoricalAttribute);
+        this.categoricalAttribute = categoricalAttribute;
+        this.options = options;
+        this.columns = data.getAttributeCount();
+        this.dictionary = new double[columns][];
+
+        double[] sortedLabels = data.labels.clone();
+        Arrays.sort(sortedLabels);
+        int classCount = 0;
+        for (int i = 0; i < sortedLabels.length; i++) {
+            if (i == 0 || sortedLabels[i] != sortedLabels[i - 1]) {
+                sortedLabels[classCount] = sortedLabels[i];
+                classCount++;
+            }
+        }
+        this.classes = Arrays.copyOf(sortedLabels, classCount);
+
+        // categorical attributes get one bin past the dictionary for categories the template didn't have
+        double[][] sortedSamples = new double[columns][];
+        int[] cardinality = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            if (categoricalAttribute[column]) {
+                dictionary[column] = data.dictionary[column];
+                cardinality[column] = dictionary[column].length + 1;
+            } else {
+                sortedSamples[column] = data.attributes[column].clone();
+                Arrays.sort(sortedSamples[column]);
+                TreeEvents.sortsPerformed.increment();
+            }
+        }
+        this.splitter = new HistogramSplitter(categoricalAttribute, sortedSamples, cardinality, classes, 0);
+        this.root = newLeaf(0, classes[0]);
+    }
+
+    /****
+	 * Method: learn
+	 * Description: learns every row of a data set, in order
+	****/
+    public void learn(Dataset data) {
+        double[] row = new double[columns];
+        for (int i = 0; i < data.rows; i++) {
+            for (int column = 0; column < columns; column++) {
+                row[column] = data.value(column, i);
+            }
+            learn(row, data.labels[i]);
+        }
+    }
+
+    /****
+	 * Method: learn
+	 * Description: learns one row - adds it to the statistics of its leaf, and checks the leaf for a split every
+	 * options.gracePeriod rows
+	****/
+    public void learn(double[] attributes, double label) {
+        int labelClass = Arrays.binarySearch(classes, label);
+        if (labelClass < 0) {
+            throw new IllegalArgumentException("class " + label + " isn't one of the template's classes " + Arrays.toString(classes));
+        }
+        HoeffdingNode node = root;
+        while (node.children != null) {
+            int child = childIndex(node, attributes);
+            if (child < 0) {
+                return; // a category this split has no child for
+            }
+            node = node.children[child];
+        }
+
+        int classCount = classes.length;
+        node.classCounts[labelClass]++;
+        node.weight++;
+        for (int column = 0; column < columns; column++) {
+            node.histogram.counts[column][bin(column, attributes[column]) * classCount + labelClass]++;
+        }
+        rowsLearned++;
+        node.sinceCheck++;
+        if (node.sinceCheck >= options.gracePeriod) {
+            node.sinceCheck = 0;
+            trySplit(node);
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: the majority class of the leaf a row reaches, with the tree as it is now
+	****/
+    public double predict(double[] attributes) {
+        HoeffdingNode node = root;
+        while (node.children != null) {
+            int child = childIndex(node, attributes);
+            if (child < 0) {
+                return majority(node);
+            }
+            node = node.children[child];
+        }
+        return majority(node);
+    }
+
+    /****
+	 * Method: trySplit
+	 * Description: scores every attribute of a leaf and splits it on the best one when the Hoeffding bound
+	 * sqrt(R^2 ln(1/delta) / 2n) is below the best gain ratio's lead over the runner up, or below the tie threshold. R is
+	 * 1, the range of the gain ratio - the information gain is at most the split information it is divided by. Not
+	 * splitting counts as a runner up with gain ratio 0
+	****/
+    private void trySplit(HoeffdingNode leaf) {
+        double entropy = StreamingTrainer.entropy(leaf.classCounts, leaf.weight);
+        if (entropy == 0) {
+            return;
+        }
+
+        TreeEvents.SplitSearchEvent event = new TreeEvents.SplitSearchEvent();
+        event.begin();
+        double[] featureEntropy = new double[columns];
+        double[] gainRatio = new double[columns];
+        double[] splitValueArray = new double[columns];
+        int best = -1;
+        double bestRatio = 0;
+        double secondRatio = 0;
+        for (int column = 0; column < columns; column++) {
+            splitter.scoreClassification(leaf.histogram, leaf.weight, entropy, column, featureEntropy, gainRatio, splitValueArray);
+            if (gainRatio[column] > bestRatio) {
+                secondRatio = bestRatio;
+                bestRatio = gainRatio[column];
+                best = column;
+            } else if (gainRatio[column] > secondRatio) {
+                secondRatio = gainRatio[column];
+            }
+        }
+        double range = 1; // gain ratios lie in [0, 1]
+        double bound = Math.sqrt(range * range * Math.log(1 / options.splitConfidence) / (2.0 * leaf.weight));
+        boolean split = best >= 0 && (bestRatio - secondRatio > bound || bound < options.tieThreshold);
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = leaf.depth;
+            event.rows = leaf.weight;
+            event.attributesEvaluated = columns;
+            event.chosenAttribute = split ? best : -1;
+            event.histogram = true;
+            event.commit();
+        }
+        if (!split) {
+            return;
+        }
+
+        leaf.splitIndex = best;
+        leaf.histogram = null;
+        double fallback = majority(leaf);
+        int children;
+        if (categoricalAttribute[best]) {
+            children = dictionary[best].length;
+        } else {
+            leaf.splitValue = splitValueArray[best];
+            children = 2;
+        }
+        HoeffdingNode[] childNodes = new HoeffdingNode[children];
+        for (int k = 0; k < children; k++) {
+            childNodes[k] = newLeaf(leaf.depth + 1, fallback);
+        }
+        leaf.children = childNodes;
+        nodeCount = nodeCount + children;
+        leafCount = leafCount + children - 1;
+    }
+
+    private HoeffdingNode newLeaf(int depth, double fallback) {
+        HoeffdingNode leaf = new HoeffdingNode(depth, classes.length, fallback);
+        leaf.histogram = new HistogramSplitter.Histogram(splitter.binCount, classes.length, true);
+        TreeEvents.nodesCreated.increment();
+        long bytes = TreeEvents.arrayBytes(columns, 4);
+        for (int column = 0; column < columns; column++) {
+            bytes = bytes + TreeEvents.arrayBytes(leaf.histogram.counts[column].length, 4);
+        }
+        TreeEvents.nodeBytesAllocated.add(bytes);
+        return leaf;
+    }
+
+    /****
+	 * Method: childIndex
+	 * Description: which child of a split a row goes to, -1 for a category the template didn't have
+	****/
+    private int childIndex(HoeffdingNode node, double[] attributes) {
+        double x = attributes[node.splitIndex];
+        if (categoricalAttribute[node.splitIndex]) {
+            int code = Arrays.binarySearch(dictionary[node.splitIndex], x);
+            return (code >= 0) ? code : -1;
+        }
+        return (x <= node.splitValue) ? 0 : 1;
+    }
+
+    /****
+	 * Method: bin
+	 * Description: histogram bin of one attribute value - the category code, the extra bin for an unknown category,
+	 * or the numeric bin
+	****/
+    private int bin(int column, double x) {
+        if (categoricalAttribute[column]) {
+            int code = Arrays.binarySearch(dictionary[column], x);
+            return (code >= 0) ? code : dictionary[column].length;
+        }
+        return splitter.bin(column, x);
+    }
+
+    /****
+	 * Method: majority
+	 * Description: most frequent class of a node's rows, or the parent's before it has any. Ties go to the smallest class
+	****/
+    private double majority(HoeffdingNode node) {
+        int mostFrequent = 0;
+        for (int c = 1; c < classes.length; c++) {
+            if (node.classCounts[c] > node.classCounts[mostFrequent]) {
+                mostFrequent = c;
+            }
+        }
+        return (node.weight > 0) ? classes[mostFrequent] : node.fallback;
+    }
+
+    public long getRowsLearned() {
+        return rowsLearned;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /****
+	 * Method: compile
+	 * Description: snapshot of the tree as it is now, for batch scoring, a ModelFile or scoring from other threads.
+	 * Predicts the same as predict
+	****/
+    public CompiledTree compile() {
+        List<HoeffdingNode> nodes = new ArrayList<HoeffdingNode>();
+        ArrayDeque<HoeffdingNode> queue = new ArrayDeque<HoeffdingNode>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            HoeffdingNode node = queue.poll();
+            nodes.add(node);
+            if (node.children != null) {
+                queue.addAll(Arrays.asList(node.children));
+            }
+        }
+
+        double[][] categories = new double[columns][];
+        int tableSize = 0;
+        for (int column = 0; column < columns; column++) {
+            categories[column] = categoricalAttribute[column] ? dictionary[column] : new double[0];
+        }
+        for (HoeffdingNode node : nodes) {
+            if (node.children != null && categoricalAttribute[node.splitIndex]) {
+                tableSize = tableSize + categories[node.splitIndex].length;
+            }
+        }
+        int count = nodes.size();
+        byte[] kind = new byte[count];
+        int[] feature = new int[count];
+        double[] threshold = new double[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        double[] value = new double[count];
+        int[] childTable = new int[tableSize];
+
+        // children were queued in the order they are numbered here, so the next unassigned number is the first child
+        int nextChild = 1;
+        int nextTableEntry = 0;
+        for (int id = 0; id < count; id++) {
+            HoeffdingNode node = nodes.get(id);
+            value[id] = majority(node);
+            if (node.children == null) {
+                kind[id] = CompiledTree.LEAF;
+            } else if (categoricalAttribute[node.splitIndex]) {
+                kind[id] = CompiledTree.CATEGORICAL;
+                feature[id] = node.splitIndex;
+                left[id] = nextTableEntry;
+                for (int code = 0; code < node.children.length; code++) {
+                    childTable[nextTableEntry + code] = nextChild;
+                    nextChild++;
+                }
+                nextTableEntry = nextTableEntry + node.children.length;
+            } else {
+                kind[id] = CompiledTree.NUMERIC;
+                feature[id] = node.splitIndex;
+                threshold[id] = node.splitValue;
+                left[id] = nextChild;
+                right[id] = nextChild + 1;
+                nextChild = nextChild + 2;
+            }
+        }
+        return new CompiledTree(kind, feature, threshold, left, right, value, childTable, categories);
+    }
+
+    /****
+	 * Method: main
+	 * Description: learns a synthetic stream with the layout of a bundled classification data set, testing each row
+	 * before learning it, and prints the accuracy and learning rate over each tenth of the stream. Then compares the
+	 * compiled tree on a held out set with a batch tree grown from scratch on the last BATCH_ROWS rows
+	 *
+	 * Usage: java HoeffdingTree <data set number> [rows] [concept depth] [noise]
+	****/
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: java HoeffdingTree <data set number> [rows] [concept depth] [noise]");
+            System.exit(1);
+        }
+        int dataSetNumber = Integer.parseInt(args[0]);
+        int rows = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+        int conceptDepth = (args.length > 2) ? Integer.parseInt(args[2]) : 6;
+        double noise = (args.length > 3) ? Double.parseDouble(args[3]) : 0.05;
+
+        SyntheticData generator = new SyntheticData(dataSetNumber, conceptDepth, noise, 42);
+        boolean[] categoricalAttribute = generator.getCatArray();
+        Dataset template = generator.generate(10000, 43);
+        Dataset stream = generator.generate(rows, 44);
+        Dataset testData = generator.generate(100000, 45);
+        HoeffdingTree tree = new HoeffdingTree(template, categoricalAttribute, new TreeOptions());
+
+        System.out.printf("%10s %10s %12s %8s%n", "rows", "accuracy", "rows/s", "leaves");
+        double[] row = new double[tree.columns];
+        int window = Math.max(1, rows / 10);
+        int correct = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            for (int column = 0; column < tree.columns; column++) {
+                row[column] = stream.value(column, i);
+            }
+            if (tree.predict(row) == stream.labels[i]) {
+                correct++;
+            }
+            tree.learn(row, stream.labels[i]);
+            if ((i + 1) % window == 0 || i == rows - 1) {
+                int windowRows = (i % window) + 1;
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                System.out.printf("%10d %10.4f %12.0f %8d%n", i + 1, (double) correct / windowRows, windowRows / seconds, tree.getLeafCount());
+                correct = 0;
+                startTime = System.nanoTime();
+            }
+        }
+
+        double[] results = new double[testData.rows];
+        tree.compile().predict(testData, 0, testData.rows, results, 0);
+        System.out.printf("online: %d nodes, test accuracy %.4f%n", tree.getNodeCount(), ScalingHarness.quality(results, testData, true));
+        int[] recentRows = new int[Math.min(rows, BATCH_ROWS)];
+        for (int k = 0; k < recentRows.length; k++) {
+            recentRows[k] = rows - recentRows.length + k;
+        }
+        Dataset recent = stream.subset(recentRows);
+        startTime = System.nanoTime();
+        CompiledTree batch = CompiledTree.compile(DecisionTrees.startGenerateTree(recent, categoricalAttribute, new TreeOptions()));
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        batch.predict(testData, 0, testData.rows, results, 0);
+        System.out.printf("batch on the last %d rows: %d nodes, test accuracy %.4f, %.3f s to grow%n", recent.rows, batch.getNodeCount(), ScalingHarness.quality(results, testData, true), seconds);
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/****
+ * Class: ModelFile
+ * Description: binary file for a compiled tree. It stores CompiledTree's arrays as they are, so a mapped model
+ * predicts straight out of the mapping - nothing is deserialized into Node objects or copied onto the heap, opening a
+ * model costs one mmap however large it is, and every process that maps the same file shares its pages in the OS
+ * page cache. Predictions match the CompiledTree the file was written from
+ *
+ * Layout: int magic, int version, int node count, int child table size, int attribute count, int category value
+ * count, then the node thresholds, the node values and the category values of every attribute as doubles, then the
+ * node features, left children, right children, the child table and attributeCount + 1 category offsets as ints, then
+ * one kind byte per node, zero padded to a multiple of 8. Everything is little-endian and every block starts on its
+ * own natural alignment
+****/
+public class ModelFile {
+    static final int MAGIC = 0x464D5444; // "DTMF"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    final ByteBuffer kind; // views of the mapped blocks, read with absolute gets so one model can be shared by threads
+    final IntBuffer feature;
+    final DoubleBuffer threshold;
+    final IntBuffer left;
+    final IntBuffer right;
+    final DoubleBuffer value;
+    final IntBuffer childTable;
+    final IntBuffer categoryOffset; // attribute -> first entry of its sorted category values in categoryValues
+    final DoubleBuffer categoryValues;
+    final int nodeCount;
+
+    ModelFile(ByteBuffer kind, IntBuffer feature, DoubleBuffer threshold, IntBuffer left, IntBuffer right, DoubleBuffer value,
+            IntBuffer childTable, IntBuffer categoryOffset, DoubleBuffer categoryValues) {
+        this.kind = kind;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.value = value;
+        this.childTable = childTable;
+        this.categoryOffset = categoryOffset;
+        this.categoryValues = categoryValues;
+        this.nodeCount = kind.capacity();
+    }
+
+    /****
+	 * Method: write
+	 * Description: writes a compiled tree to a model file
+	****/
+    public static void write(CompiledTree tree, String writeFile) throws IOException {
+        int nodeCount = tree.getNodeCount();
+        int attributeCount = tree.categories.length;
+        int categoryValueCount = 0;
+        for (double[] categories : tree.categories) {
+            categoryValueCount = categoryValueCount + categories.length;
+        }
+        long size = fileSize(nodeCount, tree.childTable.length, attributeCount, categoryValueCount);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a tree with " + nodeCount + " nodes is too large for a model file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(nodeCount);
+        buffer.putInt(tree.childTable.length);
+        buffer.putInt(attributeCount);
+        buffer.putInt(categoryValueCount);
+        for (double x : tree.threshold) {
+            buffer.putDouble(x);
+        }
+        for (double x : tree.value) {
+            buffer.putDouble(x);
+        }
+        for (double[] categories : tree.categories) {
+            for (double x : categories) {
+                buffer.putDouble(x);
+            }
+        }
+        for (int x : tree.feature) {
+            buffer.putInt(x);
+        }
+        for (int x : tree.left) {
+            buffer.putInt(x);
+        }
+        for (int x : tree.right) {
+            buffer.putInt(x);
+        }
+        for (int x : tree.childTable) {
+            buffer.putInt(x);
+        }
+        int offset = 0;
+        for (double[] categories : tree.categories) {
+            buffer.putInt(offset);
+            offset = offset + categories.length;
+        }
+        buffer.putInt(offset);
+        buffer.put(tree.kind);
+        buffer.position(0);
+
+        try (RandomAccessFile file = new RandomAccessFile(writeFile, "rw"); FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /****
+	 * Method: map
+	 * Description: memory maps a model file read-only and checks its header and size. The blocks are only touched
+	 * when a prediction reads them
+	****/
+    public static ModelFile map(String readFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(readFile, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(readFile + " is not a model file");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException(readFile + " is not a model file");
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException(readFile + " has model file version " + mapped.getInt(4) + ", expected " + VERSION + " - write the model again");
+            }
+            int nodeCount = mapped.getInt(8);
+            int tableSize = mapped.getInt(12);
+            int attributeCount = mapped.getInt(16);
+            int categoryValueCount = mapped.getInt(20);
+            long expectedSize = fileSize(nodeCount, tableSize, attributeCount, categoryValueCount);
+            if (channel.size() < expectedSize) {
+                throw new IOException(readFile + " is truncated - expected " + expectedSize + " bytes, found " + channel.size());
+            }
+
+            int offset = HEADER_BYTES;
+            DoubleBuffer threshold = slice(mapped, offset, nodeCount * Double.BYTES).asDoubleBuffer();
+            offset = offset + nodeCount * Double.BYTES;
+            DoubleBuffer value = slice(mapped, offset, nodeCount * Double.BYTES).asDoubleBuffer();
+            offset = offset + nodeCount * Double.BYTES;
+            DoubleBuffer categoryValues = slice(mapped, offset, categoryValueCount * Double.BYTES).asDoubleBuffer();
+            offset = offset + categoryValueCount * Double.BYTES;
+            IntBuffer feature = slice(mapped, offset, nodeCount * Integer.BYTES).asIntBuffer();
+            offset = offset + nodeCount * Integer.BYTES;
+            IntBuffer left = slice(mapped, offset, nodeCount * Integer.BYTES).asIntBuffer();
+            offset = offset + nodeCount * Integer.BYTES;
+            IntBuffer right = slice(mapped, offset, nodeCount * Integer.BYTES).asIntBuffer();
+            offset = offset + nodeCount * Integer.BYTES;
+            IntBuffer childTable = slice(mapped, offset, tableSize * Integer.BYTES).asIntBuffer();
+            offset = offset + tableSize * Integer.BYTES;
+            IntBuffer categoryOffset = slice(mapped, offset, (attributeCount + 1) * Integer.BYTES).asIntBuffer();
+            offset = offset + (attributeCount + 1) * Integer.BYTES;
+            ByteBuffer kind = slice(mapped, offset, nodeCount);
+            // the mapping stays valid after the channel is closed
+            return new ModelFile(kind, feature, threshold, left, right, value, childTable, categoryOffset, categoryValues);
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getAttributeCount() {
+        return categoryOffset.capacity() - 1;
+    }
+
+    /****
+	 * Method: predict
+	 * Description: prediction for one row given as an array of attribute values
+	****/
+    public double predict(double[] attributes) {
+        int node = 0;
+        int next = step(node, attributes[feature.get(node)]);
+        while (next >= 0) {
+            node = next;
+            next = step(node, attributes[feature.get(node)]);
+        }
+        return value.get(node);
+    }
+
+    /****
+	 * Method: predict
+	 * Description: prediction for one row of a column-major data set
+	****/
+    public double predict(Dataset data, int row) {
+        int node = 0;
+        int next = step(node, data.value(feature.get(node), row));
+        while (next >= 0) {
+            node = next;
+            next = step(node, data.value(feature.get(node), row));
+        }
+        return value.get(node);
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for rows [from, to) of a column-major data set, scored in tiles of
+	 * CompiledTree.TILE_SIZE rows level by level. The prediction for row from + k is written to out[outOffset + k]
+	****/
+    public void predict(Dataset data, int from, int to, double[] out, int outOffset) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileNode = new int[CompiledTree.TILE_SIZE];
+        for (int tileStart = from; tileStart < to; tileStart = tileStart + CompiledTree.TILE_SIZE) {
+            int n = Math.min(CompiledTree.TILE_SIZE, to - tileStart);
+            for (int i = 0; i < n; i++) {
+                tileNode[i] = 0;
+            }
+
+            // move every row of the tile down one level per pass, so the mapped pages near the root are reused while hot
+            boolean active = true;
+            while (active) {
+                active = false;
+                for (int i = 0; i < n; i++) {
+                    int node = tileNode[i];
+                    if (node < 0) {
+                        continue; // already scored
+                    }
+                    int next = step(node, data.value(feature.get(node), tileStart + i));
+                    if (next < 0) {
+                        out[outOffset + (tileStart - from) + i] = value.get(node);
+                    } else {
+                        active = true;
+                    }
+                    tileNode[i] = next;
+                }
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = to - from;
+            event.nodes = getNodeCount();
+            event.source = "ModelFile";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for rows [from, to) of row-major data (attribute values only, no label), scored
+	 * in tiles like the column-major batch. The prediction for rows[from + k] is written to out[outOffset + k]
+	****/
+    public void predict(double[][] rows, int from, int to, double[] out, int outOffset) {
+        TreeEvents.BatchScoringEvent event = new TreeEvents.BatchScoringEvent();
+        event.begin();
+        int[] tileNode = new int[CompiledTree.TILE_SIZE];
+        for (int tileStart = from; tileStart < to; tileStart = tileStart + CompiledTree.TILE_SIZE) {
+            int n = Math.min(CompiledTree.TILE_SIZE, to - tileStart);
+            for (int i = 0; i < n; i++) {
+                tileNode[i] = 0;
+            }
+
+            boolean active = true;
+            while (active) {
+                active = false;
+                for (int i = 0; i < n; i++) {
+                    int node = tileNode[i];
+                    if (node < 0) {
+                        continue; // already scored
+                    }
+                    int next = step(node, rows[tileStart + i][feature.get(node)]);
+                    if (next < 0) {
+                        out[outOffset + (tileStart - from) + i] = value.get(node);
+                    } else {
+                        active = true;
+                    }
+                    tileNode[i] = next;
+                }
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = to - from;
+            event.nodes = getNodeCount();
+            event.source = "ModelFile";
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: step
+	 * Description: the child a row moves to from a node given the value of the node's feature, or -1 if the row
+	 * stops there with value[node] as its prediction. Leaves store feature 0, so reading it before the kind is safe
+	****/
+    private int step(int node, double x) {
+        byte nodeKind = kind.get(node);
+        if (nodeKind == CompiledTree.NUMERIC) {
+            return (x <= threshold.get(node)) ? left.get(node) : right.get(node);
+        } else if (nodeKind == CompiledTree.CATEGORICAL) {
+            int code = categoryCode(feature.get(node), x);
+            if (code < 0) {
+                return -1;
+            }
+            return childTable.get(left.get(node) + code);
+        }
+        return -1;
+    }
+
+    /****
+	 * Method: categoryCode
+	 * Description: binary search for a value among the mapped sorted category values of one attribute - its index
+	 * there, or -1 if the value was never split on
+	****/
+    private int categoryCode(int attribute, double x) {
+        int low = categoryOffset.get(attribute);
+        int start = low;
+        int high = categoryOffset.get(attribute + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = Double.compare(categoryValues.get(mid), x);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid - start;
+            }
+        }
+        return -1;
+    }
+
+    /****
+	 * Method: main
+	 * Description: maps a model file and reports how long that took - java ModelFile <model file> [column file]. Given a
+	 * column file it also prints the prediction for each of its rows
+	****/
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("usage: java ModelFile <model file> [column file]");
+            System.exit(1);
+        }
+        long startTime = System.nanoTime();
+        ModelFile model = map(args[0]);
+        long mapMicros = (System.nanoTime() - startTime) / 1000;
+        System.out.println("mapped " + model.getNodeCount() + " nodes from " + args[0] + " in " + mapMicros + " us");
+
+        if (args.length == 2) {
+            Dataset data = ColumnFile.map(args[1]).toDataset();
+            double[] predictions = new double[data.rows];
+            model.predict(data, 0, data.rows, predictions, 0);
+            for (double prediction : predictions) {
+                System.out.println(prediction);
+            }
+        }
+    }
+
+    private static long fileSize(int nodeCount, int tableSize, int attributeCount, int categoryValueCount) {
+        long size = HEADER_BYTES + (2L * nodeCount + categoryValueCount) * Double.BYTES
+                + (3L * nodeCount + tableSize + attributeCount + 1) * Integer.BYTES + nodeCount;
+        return (size + 7) / 8 * 8;
+    }
+
+    /****
+	 * Method: slice
+	 * Description: little-endian view of length bytes of the mapping starting at offset
+	****/
+    private static ByteBuffer slice(ByteBuffer mapped, int offset, int length) {
+        ByteBuffer view = mapped.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
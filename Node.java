@@ -0,0 +1,737 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/****
+ * Class: Node
+ * Description: one node of a tree being grown. A node owns a slice of its tree's TrainingIndex, keeps the label
+ * statistics of those rows, and finds and makes its own split
+****/
+class Node {
+    TrainingIndex index; // row bookkeeping shared by every node in the tree
+    Dataset data;  // full training set - shared by every node in the tree, never modified
+    int[] rowIndex; // row indices into data - shared by every node in the tree, each node owns the slice [start, end)
+    int start; // first position of this node's rows in rowIndex
+    int end; // one past the last position of this node's rows in rowIndex
+    int depth; // 0 for the root
+    int weight; // sum of the row weights at this node - its row count unless the tree is trained on weighted rows
+    boolean[] categoricalAttribute; // = {true, true, true, true, true};
+    HashMap<Double, Node> childNodes = new HashMap<Double, Node>(); // keep track of children -> could have any number of children if split on categorical attribute
+    int splitIndex; // attribute to split on
+    double splitValue; // split condition if numeric attribute - rows with a value <= splitValue go to the left child
+    double splitGain; // impurity per unit of weight the split chosen by determineSplit removes - entropy or MSE here minus after the split
+    double entropy; // entropy value at node
+    double meanSquaredError; // MSE at node - used on regression datasets
+    int[][] frequency; // categorical attributes: weight at this node with each category code (0 for categories not here). label: weight of each class here
+    double[][] categoryValues; // categorical attributes: the column's dictionary. label: the distinct classes at this node, sorted - same order as frequency
+    boolean isLeaf; // is this node a leaf node?
+    double leafValue; // value at the leaf
+    double mostFrequentClass; // value of most frequent class with training subset at the node
+    double labelSum; // regression - sum of the labels at the node
+    boolean isPruned; // flag if the current node has been removed with pruning
+    HistogramSplitter.Histogram histogram; // per-bin label statistics - histogram training only, dropped once the node is split or made a leaf
+
+    /****
+	 * Method: Node constructor
+	 * Description: takes data and categorical attribute array. Creates a root node that owns every row of the data
+	****/
+    Node(Dataset data, boolean[] categoricalAttribute) {
+        this(new TrainingIndex(data, categoricalAttribute, new TreeOptions()), 0, data.rows);
+    }
+
+    /****
+	 * Method: Node constructor
+	 * Description: creates a node over the slice [start, end) of a shared training index
+	****/
+    Node(TrainingIndex index, int start, int end) {
+        this.index = index;
+        this.data = index.data;
+        this.rowIndex = index.rowIndex;
+        this.start = start;
+        this.end = end;
+        this.categoricalAttribute = index.categoricalAttribute;
+        this.calculateStatistics();
+        this.isLeaf = false;
+        TreeEvents.nodesCreated.increment();
+        this.isPruned = false;
+    }
+
+    /****
+	 * Method: getRowCount
+	 * Description: returns the number of training rows at this node
+	****/
+    public int getRowCount() {
+        return end - start;
+    }
+
+    /****
+	 * Method: split
+	 * Description: adds child nodes to current node. Partitions this node's slice of the row index (and of every
+	 * presorted column) in place - each child owns a contiguous piece of it and no row data is copied
+	****/
+    public void split(int splitIndex) {
+        TreeEvents.SplitPartitionEvent event = new TreeEvents.SplitPartitionEvent();
+        event.begin();
+        this.splitIndex = splitIndex;
+        int[] rowChild = index.rowChild;
+        
+        if (categoricalAttribute[splitIndex]) {
+            // one child per category present at this node, in sorted category order - the category code is the child
+            // frequency holds weights, so the rows going to each child are counted here
+            double[] values = categoryValues[splitIndex];
+            int[] childRows = new int[values.length];
+            for (int i = start; i < end; i++) {
+                int code = data.code(splitIndex, rowIndex[i]);
+                rowChild[rowIndex[i]] = code;
+                childRows[code]++;
+            }
+            int[] runStart = new int[values.length];
+            for (int i = 1; i < values.length; i++) {
+                runStart[i] = runStart[i - 1] + childRows[i - 1];
+            }
+            index.partition(start, end, runStart);
+
+            for (int i = 0; i < values.length; i++) {
+                if (childRows[i] == 0) {
+                    continue;
+                }
+                int childStart = start + runStart[i];
+                int childEnd = childStart + childRows[i];
+                Node childNode = new Node(index, childStart, childEnd);
+                childNode.depth = depth + 1;
+                childNodes.put(values[i], childNode);
+            }
+        } else {
+            // rows <= splitValue go to the left child, the rest to the right
+            double[] column = data.attributes[splitIndex];
+            int leftCount = 0;
+            for (int i = start; i < end; i++) {
+                if (column[rowIndex[i]] <= splitValue) {
+                    rowChild[rowIndex[i]] = 0;
+                    leftCount++;
+                } else {
+                    rowChild[rowIndex[i]] = 1;
+                }
+            }
+            index.partition(start, end, new int[] {0, leftCount});
+
+            Node childNodeLeft = new Node(index, start, start + leftCount);
+            Node childNodeRight = new Node(index, start + leftCount, end);
+            childNodeLeft.depth = depth + 1;
+            childNodeRight.depth = depth + 1;
+            childNodes.put(0.0, childNodeLeft);
+            childNodes.put(1.0, childNodeRight);
+        }
+
+        if (index.histogramSplitter != null) {
+            index.histogramSplitter.splitHistogram(this);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.rows = getRowCount();
+            event.attribute = splitIndex;
+            event.categorical = categoricalAttribute[splitIndex];
+            event.children = childNodes.size();
+            event.commit();
+        }
+    }
+
+    /****
+	 * Method: determinesSplitRegression
+	 * Description: determines which attribute to split on based on minimizing MSE
+	****/
+    public int determineSplitRegression() {
+        double[] labels = data.labels;
+        int[] rowWeight = index.rowWeight;
+        double[] meanSquaredError = new double[data.attributes.length];
+        double[] splitValueArray = new double[data.attributes.length];
+        HistogramSplitter histograms = index.histogramSplitter;
+        if (histograms != null && histogram == null) {
+            histogram = histograms.build(this);
+        }
+
+        // label totals for the node, centered on the node mean to keep the running sums well conditioned
+        double mean = 0;
+        double totalSum = 0;
+        double totalSquares = 0;
+        if (histograms == null) {
+            for (int i = start; i < end; i++) {
+                mean = mean + rowWeight[rowIndex[i]] * labels[rowIndex[i]];
+            }
+            mean = mean / weight;
+            for (int i = start; i < end; i++) {
+                double y = labels[rowIndex[i]] - mean;
+                totalSum = totalSum + rowWeight[rowIndex[i]] * y;
+                totalSquares = totalSquares + rowWeight[rowIndex[i]] * y * y;
+            }
+        }
+
+        final double nodeMean = mean;
+        final double nodeSum = totalSum;
+        final double nodeSquares = totalSquares;
+        int[] columns = candidateColumns();
+        forEachColumn(columns, column -> {
+            if (histograms != null) {
+                meanSquaredError[column] = histograms.regressionError(this, column, splitValueArray);
+            } else {
+                meanSquaredError[column] = regressionError(column, nodeMean, nodeSum, nodeSquares, splitValueArray);
+            }
+        });
+
+        int splitIndex = bestRegressionSplit(columns, meanSquaredError, columns.length < data.attributes.length);
+        if (splitIndex >= 0) {
+            this.splitGain = this.meanSquaredError - meanSquaredError[splitIndex];
+        }
+        if (splitIndex >= 0 && !categoricalAttribute[splitIndex]) {
+            // determine the comparison value for moving forward
+            this.splitValue = splitValueArray[splitIndex];
+        }
+
+        return splitIndex;
+    }
+
+    /****
+	 * Method: forEachColumn
+	 * Description: scores the given attributes. Large nodes score their attributes as parallel tasks on the tree's pool - 
+	 * each attribute only writes its own entries of the score arrays, and the winner is picked afterwards in column
+	 * order, so the chosen split is the same as a serial run
+	****/
+    private void forEachColumn(int[] columns, IntConsumer scoreColumn) {
+        ForkJoinPool pool = index.options.pool;
+        if (pool == null || columns.length < 2 || getRowCount() < index.options.featureParallelCutoff) {
+            for (int column : columns) {
+                scoreColumn.accept(column);
+            }
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        for (int column : columns) {
+            final int taskColumn = column;
+            tasks.add(ForkJoinTask.adapt(() -> scoreColumn.accept(taskColumn)));
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+    }
+
+    /****
+	 * Method: candidateColumns
+	 * Description: the attributes this node's split search scores, in column order - all of them, or a random
+	 * options.attributesPerNode of them. The draw is seeded from options.seed and the node's slice and depth, so a tree
+	 * comes out the same however its subtrees are scheduled
+	****/
+    int[] candidateColumns() {
+        int columns = data.attributes.length;
+        int[] candidates = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            candidates[column] = column;
+        }
+        int sample = index.candidateCount();
+        if (sample == columns) {
+            return candidates;
+        }
+        long nodeSeed = index.options.seed;
+        nodeSeed = nodeSeed * 0x9E3779B97F4A7C15L + start;
+        nodeSeed = nodeSeed * 0x9E3779B97F4A7C15L + end;
+        nodeSeed = nodeSeed * 0x9E3779B97F4A7C15L + depth;
+        SplittableRandom random = new SplittableRandom(nodeSeed);
+        for (int k = 0; k < sample; k++) {
+            int pick = k + random.nextInt(columns - k);
+            int swap = candidates[k];
+            candidates[k] = candidates[pick];
+            candidates[pick] = swap;
+        }
+        int[] chosen = Arrays.copyOf(candidates, sample);
+        Arrays.sort(chosen);
+        return chosen;
+    }
+
+    /****
+	 * Method: regressionError
+	 * Description: MSE after splitting on one attribute, or Double.MAX_VALUE if the attribute can't split this node.
+	 * For numeric attributes the best cut is stored in splitValueArray[column]. Takes the node's label totals centered on the mean
+	****/
+    private double regressionError(int column, double mean, double totalSum, double totalSquares, double[] splitValueArray) {
+        double[] labels = data.labels;
+        int[] rowWeight = index.rowWeight;
+        double squaredError = 0;
+
+        // determine splits if attribute is categorical
+        if (categoricalAttribute[column] && presentCategories(column) == 1) {
+            // only one category at this node - splitting would hand every row to a single child
+            return Double.MAX_VALUE;
+        } else if (categoricalAttribute[column]) {
+            // find average result based on each attribute value
+            double[] averages = new double[frequency[column].length]; // one per category code
+            for (int i = start; i < end; i++) {
+                int category = data.code(column, rowIndex[i]);
+                averages[category] = averages[category] + rowWeight[rowIndex[i]] * labels[rowIndex[i]] / frequency[column][category];
+            }
+            // calculate MSE based on averages
+            for (int i = start; i < end; i++) {
+                int category = data.code(column, rowIndex[i]);
+                double currentMSE = (labels[rowIndex[i]] - averages[category]) * (labels[rowIndex[i]] - averages[category]);
+                squaredError = squaredError + rowWeight[rowIndex[i]] * currentMSE;
+            }
+        } else { // numeric attribute - try every cut between distinct values of the presorted rows
+            double[] values = data.attributes[column];
+            int[] sorted = index.sortedIndex[column];
+            double leftSum = 0;
+            double leftSquares = 0;
+            int leftCount = 0; // weight left of the cut
+            double bestError = Double.MAX_VALUE;
+            for (int i = start; i < (end - 1); i++) {
+                int w = rowWeight[sorted[i]];
+                double y = labels[sorted[i]] - mean;
+                leftSum = leftSum + w * y;
+                leftSquares = leftSquares + w * y * y;
+                leftCount = leftCount + w;
+
+                // can only cut between two different values
+                if (values[sorted[i]] == values[sorted[i + 1]]) {
+                    continue;
+                }
+
+                // sum of squared errors on each side - right side derived from the node totals
+                double rightSum = totalSum - leftSum;
+                double rightSquares = totalSquares - leftSquares;
+                double error = (leftSquares - leftSum * leftSum / leftCount) + (rightSquares - rightSum * rightSum / (weight - leftCount));
+                if (error < bestError) {
+                    bestError = error;
+                    splitValueArray[column] = cutValue(values[sorted[i]], values[sorted[i + 1]]);
+                }
+            }
+
+            if (bestError == Double.MAX_VALUE) {
+                // every row has the same value - nothing to split on
+                return Double.MAX_VALUE;
+            }
+            squaredError = Math.max(bestError, 0);
+        }
+        return squaredError / weight;
+    }
+
+    /****
+	 * Method: determineSplitClassification
+	 * Description: determines the split attribute for classification data sets. Maximizes the gain ratio
+	****/
+    public int determineSplitClassification() {
+        double[] featureEntropy = new double[data.attributes.length];
+        double[] gainRatio = new double[data.attributes.length];
+        double[] splitValueArray = new double[data.attributes.length];
+        HistogramSplitter histograms = index.histogramSplitter;
+        if (histograms != null && histogram == null) {
+            histogram = histograms.build(this);
+        }
+
+        int[] columns = candidateColumns();
+        forEachColumn(columns, column -> {
+            if (histograms != null) {
+                histograms.scoreClassification(this, column, featureEntropy, gainRatio, splitValueArray);
+            } else {
+                scoreClassification(column, featureEntropy, gainRatio, splitValueArray);
+            }
+        });
+
+        int splitIndex = bestClassificationSplit(columns, featureEntropy, gainRatio, columns.length < data.attributes.length);
+        if (splitIndex >= 0) {
+            this.splitGain = entropy - featureEntropy[splitIndex];
+        }
+        if (splitIndex >= 0 && !categoricalAttribute[splitIndex]) {
+            // determine the comparison value for moving forward
+            this.splitValue = splitValueArray[splitIndex];
+        }
+
+        return splitIndex;
+    }
+
+    /****
+	 * Method: scoreClassification
+	 * Description: fills in the entropy and gain ratio of splitting on one attribute. For numeric attributes the
+	 * best cut is stored in splitValueArray[column]
+	****/
+    private void scoreClassification(int column, double[] featureEntropy, double[] gainRatio, double[] splitValueArray) {
+        int rows = weight;
+        double[] classes = categoryValues[categoryValues.length - 1];
+        int[] labelClass = index.labelClass;
+        int[] rowWeight = index.rowWeight;
+        int[] branchSize; // weight that goes to each child of the split
+
+        if (categoricalAttribute[column]) {
+            // count each class within each category
+            int[][] classCounts = new int[frequency[column].length][classes.length];
+            for (int i = start; i < end; i++) {
+                int category = data.code(column, rowIndex[i]);
+                classCounts[category][labelClass[rowIndex[i]]] += rowWeight[rowIndex[i]];
+            }
+
+            for (int category = 0; category < classCounts.length; category++) {
+                if (frequency[column][category] == 0) {
+                    continue; // category not at this node
+                }
+                double currentEntropy = 0;
+                for (int c = 0; c < classes.length; c++) {
+                    if (classCounts[category][c] > 0) {
+                        double currentFrequency = (double) classCounts[category][c] / this.frequency[column][category];
+                        currentEntropy = currentEntropy - (currentFrequency * Math.log(currentFrequency));
+                    }
+                }
+                featureEntropy[column] = featureEntropy[column] + (((double) this.frequency[column][category] / rows)* currentEntropy);
+            }
+            branchSize = frequency[column];
+        } else { // numeric attribute - binary split at the cut with the lowest entropy, one pass over the presorted rows
+            double[] values = data.attributes[column];
+            int[] sorted = index.sortedIndex[column];
+            int[] classTotals = frequency[frequency.length - 1];
+            int[] leftCounts = new int[classes.length];
+            int bestLeftCount = rows;
+            int leftCount = 0; // weight left of the cut
+            double bestEntropy = this.entropy; // no cut - all rows on one side
+            for (int i = start; i < (end - 1); i++) {
+                leftCounts[labelClass[sorted[i]]] += rowWeight[sorted[i]];
+                leftCount = leftCount + rowWeight[sorted[i]];
+
+                // can only cut between two different values
+                if (values[sorted[i]] == values[sorted[i + 1]]) {
+                    continue;
+                }
+
+                double currentEntropy = splitEntropy(leftCounts, classTotals, leftCount, rows);
+                if (currentEntropy < bestEntropy) {
+                    bestEntropy = currentEntropy;
+                    bestLeftCount = leftCount;
+                    splitValueArray[column] = cutValue(values[sorted[i]], values[sorted[i + 1]]);
+                }
+            }
+
+            featureEntropy[column] = bestEntropy;
+            branchSize = new int[] {bestLeftCount, rows - bestLeftCount};
+        }
+
+        gainRatio[column] = gainRatio(this.entropy, featureEntropy[column], branchSize, rows);
+    }
+
+    /****
+	 * Method: bestClassificationSplit
+	 * Description: picks the attribute with the highest gain ratio from the scored columns, or -1 when the node should
+	 * become a leaf - when every attribute leaves the same entropy (splitting would loop forever) or, with sampled
+	 * columns, when none of them gains anything
+	****/
+    static int bestClassificationSplit(int[] columns, double[] featureEntropy, double[] gainRatio, boolean sampled) {
+        int splitIndex = columns[0];
+        double minEntropy = featureEntropy[splitIndex];
+        boolean allSameEntropy = true;
+        double maxGainRatio = gainRatio[splitIndex];
+        for (int k = 1; k < columns.length; k++) {
+            int i = columns[k];
+            // find max gain ratio
+            if (gainRatio[i] > maxGainRatio) {
+                splitIndex = i;
+                maxGainRatio = gainRatio[i];
+            }
+
+            // determine if all of the splits are identical - this will result in infinite loop
+            if (featureEntropy[i] < minEntropy) {
+
+                minEntropy = featureEntropy[i];
+            }
+
+            if (allSameEntropy && featureEntropy[i] != minEntropy) {
+                allSameEntropy = false;
+            }
+        }
+
+        // a sample of attributes can easily score the same (a single attribute always does), so there the node only
+        // stops when none of them gains anything
+        if (sampled) {
+            allSameEntropy = !(maxGainRatio > 0);
+        }
+        if (allSameEntropy) {
+            return -1;
+        }
+        return splitIndex;
+    }
+
+    /****
+	 * Method: bestRegressionSplit
+	 * Description: picks the attribute with the lowest MSE from the scored columns, or -1 when the node should become a
+	 * leaf - when every attribute leaves the same MSE or, with sampled columns, when none of them can split the node
+	****/
+    static int bestRegressionSplit(int[] columns, double[] meanSquaredError, boolean sampled) {
+        // find minimum mean squared error
+        int splitIndex = columns[0];
+        double minMSE = meanSquaredError[splitIndex];
+        boolean allSameMSE = true;
+        for (int k = 1; k < columns.length; k++) {
+            int i = columns[k];
+            if (meanSquaredError[i] < minMSE) {
+                splitIndex = i;
+                minMSE = meanSquaredError[i];
+            }
+
+            // determine if all of the splits are identical - this will result in infinite loop
+            double currentMSE = Math.round(meanSquaredError[i] * 10000); // round off a few decimal places - I ws getting weird comparision issues that I think relates to how java stores doubles
+            double currentMinMSE = Math.round(minMSE * 10000);
+            if (allSameMSE && (currentMSE != currentMinMSE)) {
+                allSameMSE = false;
+            }
+        }
+
+        // a sample of attributes can easily score the same (a single attribute always does), so there the node only
+        // stops when none of them can split it
+        if (sampled) {
+            allSameMSE = (minMSE == Double.MAX_VALUE);
+        }
+        if (allSameMSE) {
+            return -1;
+        }
+        return splitIndex;
+    }
+
+    /****
+	 * Method: splitEntropy
+	 * Description: weighted entropy of a binary split, given the class counts on the left and for the whole node
+	****/
+    static double splitEntropy(int[] leftCounts, int[] classTotals, int leftCount, int rows) {
+        int rightCount = rows - leftCount;
+        double leftEntropy = 0;
+        double rightEntropy = 0;
+        for (int c = 0; c < leftCounts.length; c++) {
+            if (leftCounts[c] > 0) {
+                double currentFrequency = (double) leftCounts[c] / leftCount;
+                leftEntropy = leftEntropy - (currentFrequency * Math.log(currentFrequency));
+            }
+            if (classTotals[c] - leftCounts[c] > 0) {
+                double currentFrequency = (double) (classTotals[c] - leftCounts[c]) / rightCount;
+                rightEntropy = rightEntropy - (currentFrequency * Math.log(currentFrequency));
+            }
+        }
+        return ((double) leftCount / rows) * leftEntropy + ((double) rightCount / rows) * rightEntropy;
+    }
+
+    /****
+	 * Method: gainRatio
+	 * Description: information gain of a split divided by its information value. Branches with no rows are ignored
+	****/
+    static double gainRatio(double entropy, double featureEntropy, int[] branchSize, int rows) {
+        // calculate information value
+        double currentInformationValue = 0;
+        for (int i = 0; i < branchSize.length; i++) {
+            if (branchSize[i] > 0) {
+                currentInformationValue = currentInformationValue - (((double) branchSize[i] / rows) * Math.log((double) branchSize[i] / rows));
+            }
+        }
+        // if all same value, no information  gain
+        if (currentInformationValue == 0) {
+            return 0;
+        }
+        return (entropy - featureEntropy) / currentInformationValue;
+    }
+
+    /****
+	 * Method: cutValue
+	 * Description: split value between two adjacent sorted values. Uses the midpoint unless rounding pushes it onto
+	 * the higher value, since rows <= the split value go left
+	****/
+    static double cutValue(double low, double high) {
+        double middle = (low + high) / 2;
+        if (middle < high) {
+            return middle;
+        }
+        return low;
+    }
+
+    /****
+	 * Method: makeLeaf
+	 * Description: makes a node into a leaf when we won't split anymore
+	****/
+    public void makeLeaf() {
+        this.isLeaf = true;
+        this.histogram = null;
+
+        // determine leaf value - the majority class, or the average for regression
+        if (categoricalAttribute[categoricalAttribute.length - 1]) {
+            this.leafValue = mostFrequentClass;
+        } else {
+            this.leafValue = labelSum / weight;
+        }
+    }
+
+    /****
+	 * Method: noPossibleSplit
+	 * Description: used to determine if there is no split that reduces entropy
+	****/
+    public boolean noPossibleSplit() {
+        // a split is possible as soon as any attribute column holds two different values
+        for (int column = 0; column < data.attributes.length; column++) {
+            if (data.isEncoded(column)) {
+                if (presentCategories(column) > 1) {
+                    return false;
+                }
+                continue;
+            }
+            double[] values = data.attributes[column];
+            int[] sorted = index.sortedIndex[column];
+            if (sorted != null) {
+                // presorted - the slice holds two different values if its ends do
+                if (values[sorted[start]] != values[sorted[end - 1]]) {
+                    return false;
+                }
+                continue;
+            }
+            for (int i = start; i < (end - 1); i++) {
+                if (values[rowIndex[i]] != values[rowIndex[i + 1]]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /****
+	 * Method: presentCategories
+	 * Description: number of categories of an encoded attribute that occur at this node
+	****/
+    int presentCategories(int column) {
+        int present = 0;
+        for (int count : frequency[column]) {
+            if (count > 0) {
+                present++;
+            }
+        }
+        return present;
+    }
+
+    /****
+	 * Method: calculateStatistics
+	 * Description: one pass over the node's labels builds the class counts (classification) or label sums
+	 * (regression), and entropy, MSE and mostFrequentClass are derived from those. Categorical attributes get a
+	 * count per category code. Nothing is sorted
+	****/
+    private void calculateStatistics() {
+        int rows = getRowCount();
+        int[] rowWeight = index.rowWeight;
+        int columns = data.attributes.length + 1; // attributes plus the label column
+        weight = 0;
+        for (int i = start; i < end; i++) {
+            weight = weight + rowWeight[rowIndex[i]];
+        }
+        frequency = new int[columns][];
+        categoryValues = new double[columns][];
+        long bytes = 2 * TreeEvents.arrayBytes(columns, 4);
+        int scannedColumns = 1;
+        for (int column = 0; column < (columns - 1); column++) {
+            if (categoricalAttribute[column]) {
+                int[] counts = new int[data.getCardinality(column)];
+                for (int i = start; i < end; i++) {
+                    counts[data.code(column, rowIndex[i])] += rowWeight[rowIndex[i]];
+                }
+                frequency[column] = counts;
+                categoryValues[column] = data.dictionary[column];
+                bytes = bytes + TreeEvents.arrayBytes(counts.length, 4);
+                scannedColumns++;
+            }
+        }
+        TreeEvents.rowsScanned.add((long) rows * scannedColumns);
+
+        if (categoricalAttribute[columns - 1]) {
+            int[] labelClass = index.labelClass;
+            int[] classCounts = new int[index.classes.length];
+            bytes = bytes + TreeEvents.arrayBytes(classCounts.length, 4);
+            for (int i = start; i < end; i++) {
+                classCounts[labelClass[rowIndex[i]]] += rowWeight[rowIndex[i]];
+            }
+            frequency[columns - 1] = classCounts;
+            categoryValues[columns - 1] = index.classes;
+
+            // most frequent class label - used if there is no matching child node when testing data. Ties go to the smallest class
+            int mostFrequent = -1;
+            for (int c = 0; c < classCounts.length; c++) {
+                if (classCounts[c] > 0 && (mostFrequent == -1 || classCounts[c] > classCounts[mostFrequent])) {
+                    mostFrequent = c;
+                }
+            }
+            this.mostFrequentClass = index.classes[mostFrequent];
+            this.entropy = entropy(classCounts, weight, index.nLogN);
+        } else {
+            // squared error from sums centered on the training set mean, so large labels don't cancel out
+            double[] labels = data.labels;
+            double sum = 0;
+            double centeredSum = 0;
+            double centeredSquares = 0;
+            for (int i = start; i < end; i++) {
+                int w = rowWeight[rowIndex[i]];
+                double y = labels[rowIndex[i]];
+                sum = sum + w * y;
+                centeredSum = centeredSum + w * (y - index.labelMean);
+                centeredSquares = centeredSquares + w * (y - index.labelMean) * (y - index.labelMean);
+            }
+            this.labelSum = sum;
+            this.meanSquaredError = Math.max(centeredSquares - centeredSum * centeredSum / weight, 0) / weight;
+        }
+        TreeEvents.nodeBytesAllocated.add(bytes);
+    }
+
+    /****
+	 * Method: entropy
+	 * Description: entropy of a set of class counts, -sum (c/n) ln(c/n) = (n ln n - sum c ln c) / n, read from the n ln n table
+	****/
+    static double entropy(int[] counts, int rows, double[] nLogN) {
+        double sum = 0;
+        for (int count : counts) {
+            sum = sum + nLogN[count];
+        }
+        return Math.max(nLogN[rows] - sum, 0) / rows;
+    }
+
+    public void printTree(String offset) {
+        if (this.isLeaf) {
+            System.out.println(offset + "Leaf value = " + this.leafValue);
+        } else if (this.isPruned) {
+            System.out.println(offset + "Leaf value = " + this.mostFrequentClass);
+        } else {
+            System.out.println(offset + "Split on attribute " + splitIndex);
+
+            // loop over children and generate a tree from each child
+            for (Map.Entry<Double, Node> entry: this.childNodes.entrySet()) {
+                if (this.categoricalAttribute[splitIndex]) { // splitting on a category attribute
+                    System.out.println(offset + "Split value: " + entry.getKey());
+                } else {
+                    if (entry.getKey() == 0.0) { // left split
+                        System.out.println(offset + "Split value <= " + this.splitValue);
+                    } else {
+                        System.out.println(offset + "Split value > " + this.splitValue);
+                    }
+                }
+                entry.getValue().printTree(offset + "   ");
+            }
+        }
+    }
+
+    /****
+	 * Method: printData
+	 * Description: prints an array
+	****/
+    public void printData(Dataset newData) {
+        System.out.print("\n");
+        for (int i = 0; i < newData.rows; i++) {
+            double[] row = newData.getRow(i);
+            for (int j = 0; j < row.length; j++) {
+                System.out.print(row[j] + " ");
+            }
+            System.out.print("\n");
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/****
+ * Class: RandomForest
+ * Description: bagged ensemble of compiled trees. Every tree is trained on the same shared, read-only data set - its
+ * bootstrap sample is a weight per row (how many times the row was drawn) rather than a copy of the rows, and the
+ * presorted columns, class numbering and histogram bins are built once for the whole forest. Each node scores a random
+ * subset of the attributes. Trees are trained concurrently, one per worker, and only the compiled tree of a finished
+ * tree is kept, so memory grows with the number of workers rather than the number of trees. Predictions are the
+ * majority vote of the trees (ties go to the smallest class) or the mean of the trees for regression
+****/
+public class RandomForest {
+    static final int SCORE_CHUNK = 4096; // rows every tree scores before the votes are added up
+
+    final CompiledTree[] trees;
+    final boolean classification;
+    final double[] classes; // classification - the classes votes are counted for, sorted
+
+    RandomForest(CompiledTree[] trees, boolean classification, double[] classes) {
+        this.trees = trees;
+        this.classification = classification;
+        this.classes = classes;
+    }
+
+    /****
+	 * Method: train
+	 * Description: trains treeCount trees on threads workers. Each tree's bootstrap sample draws trainingRows.length rows
+	 * with replacement from trainingRows (null means every row of data), so a cross validation fold is trained without
+	 * copying it either - and without the other rows of data affecting any tree. options apply to every tree, with
+	 * options.pool ignored and the seed replaced by one derived from seed - set options.attributesPerNode for the
+	 * per-node attribute sampling, see defaultAttributesPerNode
+	****/
+    public static RandomForest train(Dataset data, boolean[] categoricalAttribute, int[] trainingRows, int treeCount, TreeOptions options, int threads, long seed) {
+        TreeOptions baseOptions = options.copy();
+        baseOptions.pool = null;
+        if (treeCount < 1) {
+            throw new IllegalArgumentException("a forest needs at least one tree");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("a forest needs at least one training thread");
+        }
+        if (((trainingRows == null) ? data.rows : trainingRows.length) == 0) {
+            throw new IllegalArgumentException("a forest needs at least one training row");
+        }
+        TrainingIndex allRows = new TrainingIndex(data, categoricalAttribute, baseOptions);
+        final TrainingIndex base;
+        final int[] sampleFrom;
+        if (trainingRows == null) {
+            base = allRows;
+            sampleFrom = allRows.rowIndex.clone();
+        } else {
+            // the label mean and histogram bins every tree shares come from the training rows only, so rows left out
+            // for testing don't shape the trees
+            int[] trainingMask = new int[data.rows];
+            for (int row : trainingRows) {
+                trainingMask[row] = 1;
+            }
+            base = new TrainingIndex(allRows, trainingMask, baseOptions, true);
+            sampleFrom = trainingRows;
+        }
+
+        CompiledTree[] trees = new CompiledTree[treeCount];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int t = 0; t < treeCount; t++) {
+            final int tree = t;
+            tasks.add(executor.submit(() -> {
+                // the tree's random numbers only depend on the seed and the tree number, not on scheduling
+                SplittableRandom random = new SplittableRandom(seed ^ ((tree + 1) * 0x9E3779B97F4A7C15L));
+                int[] rowWeight = new int[base.data.rows];
+                for (int k = 0; k < sampleFrom.length; k++) {
+                    rowWeight[sampleFrom[random.nextInt(sampleFrom.length)]]++;
+                }
+                TreeOptions treeOptions = baseOptions.copy();
+                treeOptions.seed = random.nextLong();
+
+                TrainingIndex index = new TrainingIndex(base, rowWeight, treeOptions, false);
+                Node root = new Node(index, 0, index.rowIndex.length);
+                DecisionTrees.growTree(root, treeOptions);
+                trees[tree] = CompiledTree.compile(root);
+            }));
+        }
+        executor.shutdown();
+
+        // get() also makes the trees written by the workers visible here
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException except) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while training the forest", except);
+            } catch (ExecutionException except) {
+                executor.shutdownNow();
+                if (except.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) except.getCause();
+                }
+                throw new IllegalStateException("training a forest tree failed", except.getCause());
+            }
+        }
+        return new RandomForest(trees, categoricalAttribute[categoricalAttribute.length - 1], base.classes);
+    }
+
+    /****
+	 * Method: defaultAttributesPerNode
+	 * Description: the usual attribute sample size - the square root of the attribute count for classification, a
+	 * third of it for regression, and at least 1
+	****/
+    public static int defaultAttributesPerNode(int attributeCount, boolean classification) {
+        if (classification) {
+            return Math.max(1, (int) Math.round(Math.sqrt(attributeCount)));
+        }
+        return Math.max(1, attributeCount / 3);
+    }
+
+    public int getTreeCount() {
+        return trees.length;
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for rows [from, to) of a column-major data set. The prediction for row from + k is
+	 * written to out[outOffset + k]
+	****/
+    public void predict(Dataset data, int from, int to, double[] out, int outOffset) {
+        int[] chunkRows = new int[SCORE_CHUNK];
+        double[] chunkOut = new double[SCORE_CHUNK];
+        Scratch scratch = new Scratch();
+        for (int chunkStart = from; chunkStart < to; chunkStart = chunkStart + SCORE_CHUNK) {
+            int n = Math.min(SCORE_CHUNK, to - chunkStart);
+            for (int i = 0; i < n; i++) {
+                chunkRows[i] = chunkStart + i;
+            }
+            scoreChunk(data, chunkRows, n, chunkOut, scratch);
+            System.arraycopy(chunkOut, 0, out, outOffset + (chunkStart - from), n);
+        }
+    }
+
+    /****
+	 * Method: predict
+	 * Description: batch prediction for the listed rows of a column-major data set. The prediction for row rows[k] is
+	 * written to out[rows[k]], so out is indexed like the data set
+	****/
+    public void predict(Dataset data, int[] rows, double[] out) {
+        int[] chunkRows = new int[SCORE_CHUNK];
+        double[] chunkOut = new double[SCORE_CHUNK];
+        Scratch scratch = new Scratch();
+        for (int chunkStart = 0; chunkStart < rows.length; chunkStart = chunkStart + SCORE_CHUNK) {
+            int n = Math.min(SCORE_CHUNK, rows.length - chunkStart);
+            System.arraycopy(rows, chunkStart, chunkRows, 0, n);
+            scoreChunk(data, chunkRows, n, chunkOut, scratch);
+            for (int i = 0; i < n; i++) {
+                out[chunkRows[i]] = chunkOut[i];
+            }
+        }
+    }
+
+    /****
+	 * Class: Scratch
+	 * Description: buffers one predict call reuses for every chunk
+	****/
+    private class Scratch {
+        final double[] treeOut = new double[SCORE_CHUNK];
+        final int[] votes = classification ? new int[SCORE_CHUNK * classes.length] : null;
+        final double[] sums = classification ? null : new double[SCORE_CHUNK];
+    }
+
+    /****
+	 * Method: scoreChunk
+	 * Description: scores up to SCORE_CHUNK rows with every tree in turn - each tree walks the whole chunk with its tiled
+	 * batch predict while the chunk's columns are in cache - and writes the vote or mean of row chunkRows[i] to out[i]
+	****/
+    private void scoreChunk(Dataset data, int[] chunkRows, int n, double[] out, Scratch scratch) {
+        int classCount = classification ? classes.length : 0;
+        if (classification) {
+            Arrays.fill(scratch.votes, 0, n * classCount, 0);
+        } else {
+            Arrays.fill(scratch.sums, 0, n, 0);
+        }
+
+        for (CompiledTree tree : trees) {
+            tree.predict(data, chunkRows, 0, n, scratch.treeOut, 0);
+            if (classification) {
+                for (int i = 0; i < n; i++) {
+                    scratch.votes[i * classCount + Arrays.binarySearch(classes, scratch.treeOut[i])]++;
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    scratch.sums[i] = scratch.sums[i] + scratch.treeOut[i];
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (classification) {
+                int best = 0;
+                for (int c = 1; c < classCount; c++) {
+                    if (scratch.votes[i * classCount + c] > scratch.votes[i * classCount + best]) {
+                        best = c;
+                    }
+                }
+                out[i] = classes[best];
+            } else {
+                out[i] = scratch.sums[i] / trees.length;
+            }
+        }
+    }
+
+    /****
+	 * Method: main
+	 * Description: 5-fold cross validation of a forest on one of the bundled data sets, like DecisionTrees.main without
+	 * pruning - java RandomForest <data set number> <trees> [threads] [attributes per node]
+	****/
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("usage: java RandomForest <data set number> <trees> [threads] [attributes per node]");
+            System.exit(1);
+        }
+        int dataSetNumber = Integer.parseInt(args[0]);
+        int treeCount = Integer.parseInt(args[1]);
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        boolean[] categoricalAttribute = DataStream.getCatArray(dataSetNumber);
+        boolean classification = categoricalAttribute[categoricalAttribute.length - 1];
+        Dataset data = DataStream.getData(dataSetNumber, 2);
+        int[] kFoldArray = DataStream.getKFold(dataSetNumber, 5, data);
+        TreeOptions options = new TreeOptions();
+        options.errorThreshold = classification ? 0 : 1;
+        options.attributesPerNode = (args.length > 3) ? Integer.parseInt(args[3]) : defaultAttributesPerNode(data.getAttributeCount(), classification);
+
+        double[] results = new double[data.rows];
+        long startTime = System.nanoTime();
+        for (int fold = 0; fold < 5; fold++) {
+            int trainingCount = 0;
+            for (int i = 0; i < data.rows; i++) {
+                if (kFoldArray[i] != fold) {
+                    trainingCount++;
+                }
+            }
+            int[] trainingRows = new int[trainingCount];
+            int[] testRows = new int[data.rows - trainingCount];
+            int nextTraining = 0;
+            int nextTest = 0;
+            for (int i = 0; i < data.rows; i++) {
+                if (kFoldArray[i] != fold) {
+                    trainingRows[nextTraining] = i;
+                    nextTraining++;
+                } else {
+                    testRows[nextTest] = i;
+                    nextTest++;
+                }
+            }
+            RandomForest forest = train(data, categoricalAttribute, trainingRows, treeCount, options, threads, fold);
+            forest.predict(data, testRows, results);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println("trees/s: " + (5 * treeCount / seconds));
+        System.out.println("Performance: " + DataStream.calculatePerformance(dataSetNumber, results, data));
+    }
+}
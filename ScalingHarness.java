@@ -0,0 +1,150 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.ForkJoinPool;
+
+/****
+ * Class: ScalingHarness
+ * Description: end-to-end scaling runs on synthetic data. For each training size and thread count it generates
+ * training, pruning and test sets with SyntheticData, then grows a tree, prunes it (classification only) and scores
+ * the test set with a CompiledTree. It prints one line per run with the times, rows/s, tree size and heap use.
+ * The exponent column is log(time ratio) / log(size ratio) against the previous size at the same thread count - 1 is
+ * linear, and anything well above 1 is where training goes superlinear
+ *
+ * Usage: java ScalingHarness <data set number> [sizes, e.g. 10000,100000,1000000] [threads, e.g. 1,4] [concept depth] [noise]
+****/
+public class ScalingHarness {
+    static final long SEED = 42;
+    static final double PRUNE_FRACTION = 0.2; // pruning and test sets are this fraction of the training size
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: java ScalingHarness <data set number> [sizes] [threads] [concept depth] [noise]");
+            System.exit(1);
+        }
+        int dataSetNumber = Integer.parseInt(args[0]);
+        int[] sizes = (args.length > 1) ? Benchmarks.parseList(args[1]) : new int[] {10000, 30000, 100000, 300000, 1000000};
+        int[] threadCounts = (args.length > 2) ? Benchmarks.parseList(args[2]) : new int[] {1, Runtime.getRuntime().availableProcessors()};
+        int conceptDepth = (args.length > 3) ? Integer.parseInt(args[3]) : 6;
+        double noise = (args.length > 4) ? Double.parseDouble(args[4]) : 0.05;
+
+        SyntheticData generator = new SyntheticData(dataSetNumber, conceptDepth, noise, SEED);
+        boolean[] categoricalAttribute = generator.getCatArray();
+        boolean isClassification = categoricalAttribute[categoricalAttribute.length - 1];
+
+        System.out.printf("%10s %7s %9s %12s %9s %9s %12s %8s %8s %6s %9s %9s %8s %9s%n", "rows", "threads", "train s", "train rows/s",
+                "prune s", "eval s", "eval rows/s", "nodes", "leaves", "depth", "base MB", "peak MB", "exponent", "quality");
+        double[] previousSeconds = new double[threadCounts.length];
+        int previousSize = 0;
+        for (int size : sizes) {
+            Dataset data = generator.generate(size, SEED + 1);
+            Dataset pruneData = generator.generate(Math.max(1, (int) (size * PRUNE_FRACTION)), SEED + 2);
+            Dataset testData = generator.generate(Math.max(1, (int) (size * PRUNE_FRACTION)), SEED + 3);
+            // regression stops splitting once a node is within the label noise
+            double errorThreshold = isClassification ? 0 : Math.pow(noise * generator.labelDeviation, 2);
+
+            for (int t = 0; t < threadCounts.length; t++) {
+                int threads = threadCounts[t];
+                TreeOptions options = new TreeOptions();
+                options.errorThreshold = errorThreshold;
+                ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+                options.pool = pool;
+
+                System.gc();
+                long baseBytes = resetHeapPeaks();
+                long startTime = System.nanoTime();
+                Node tree = DecisionTrees.startGenerateTree(data, categoricalAttribute, options);
+                double trainSeconds = (System.nanoTime() - startTime) / 1e9;
+
+                startTime = System.nanoTime();
+                if (isClassification) {
+                    DecisionTrees.reducedErrorPrune(tree, pruneData);
+                }
+                double pruneSeconds = (System.nanoTime() - startTime) / 1e9;
+
+                startTime = System.nanoTime();
+                double[] results = new double[testData.rows];
+                CompiledTree.compile(tree).predict(testData, 0, testData.rows, results, 0);
+                double evalSeconds = (System.nanoTime() - startTime) / 1e9;
+                long peakBytes = heapPeak();
+                if (pool != null) {
+                    pool.shutdown();
+                }
+
+                int[] shape = treeShape(tree, 0, new int[3]);
+                String exponent = "";
+                if (previousSize > 0) {
+                    exponent = String.format("%.2f", Math.log(trainSeconds / previousSeconds[t]) / Math.log((double) size / previousSize));
+                }
+                previousSeconds[t] = trainSeconds;
+                System.out.printf("%10d %7d %9.3f %12.0f %9.3f %9.3f %12.0f %8d %8d %6d %9.1f %9.1f %8s %9.4f%n", size, threads, trainSeconds,
+                        size / trainSeconds, pruneSeconds, evalSeconds, testData.rows / evalSeconds, shape[0], shape[1], shape[2],
+                        baseBytes / 1048576.0, peakBytes / 1048576.0, exponent, quality(results, testData, isClassification));
+            }
+            previousSize = size;
+        }
+    }
+
+    /****
+	 * Method: treeShape
+	 * Description: adds the nodes, leaves (a pruned node counts as a leaf) and depth of a subtree to shape
+	****/
+    static int[] treeShape(Node node, int depth, int[] shape) {
+        shape[0]++;
+        shape[2] = Math.max(shape[2], depth);
+        if (node.isLeaf || node.isPruned) {
+            shape[1]++;
+            return shape;
+        }
+        for (Node child : node.childNodes.values()) {
+            treeShape(child, depth + 1, shape);
+        }
+        return shape;
+    }
+
+    /****
+	 * Method: quality
+	 * Description: test accuracy for classification, MSE for regression
+	****/
+    static double quality(double[] results, Dataset testData, boolean isClassification) {
+        double total = 0;
+        for (int i = 0; i < testData.rows; i++) {
+            if (isClassification) {
+                total = total + ((results[i] == testData.labels[i]) ? 1 : 0);
+            } else {
+                total = total + (results[i] - testData.labels[i]) * (results[i] - testData.labels[i]);
+            }
+        }
+        return total / testData.rows;
+    }
+
+    /****
+	 * Method: resetHeapPeaks
+	 * Description: resets the peak usage of every heap memory pool and returns the heap currently in use
+	****/
+    private static long resetHeapPeaks() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used = used + pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /****
+	 * Method: heapPeak
+	 * Description: sum of the heap pools' peak usage since the last reset. The pools peak at different moments, so
+	 * this is an upper bound on the true peak
+	****/
+    private static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak = peak + pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
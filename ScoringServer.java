@@ -0,0 +1,453 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/****
+ * Class: ScoringServer
+ * Description: local HTTP scoring service for a mapped model file. Connections are handled on virtual threads when
+ * the JVM has them (Java 21+) and on a fixed pool otherwise. A handler never scores by itself - it queues its rows and
+ * waits, and one batching thread coalesces whatever requests are waiting into a micro-batch of up to maxBatchRows
+ * rows, or whatever arrived within maxWaitMicros of the first one, and scores it with the tiled batch predict
+ *
+ * POST /score - body is one row per line, comma separated attribute values (a trailing label is ignored). The reply
+ * is one prediction per line. GET /stats - request, row and batch counters, throughput and p50/p99 latency
+****/
+public class ScoringServer {
+    static final int DEFAULT_MAX_BATCH_ROWS = 1024;
+    static final int DEFAULT_MAX_WAIT_MICROS = 200;
+    static final int FALLBACK_HANDLER_THREADS = 64; // handler pool size when virtual threads aren't available
+    static final int LATENCY_WINDOW = 1 << 16; // most recent requests kept for the latency percentiles
+
+    final ModelFile model;
+    final int maxBatchRows;
+    final long maxWaitNanos;
+    final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    final LatencyStats latency = new LatencyStats(LATENCY_WINDOW);
+    final AtomicLong requestCount = new AtomicLong();
+    final AtomicLong rowCount = new AtomicLong();
+    final AtomicLong batchCount = new AtomicLong();
+    final AtomicLong failedBatchCount = new AtomicLong();
+    HttpServer server;
+    ExecutorService handlers;
+    Thread batcher;
+    volatile boolean running = false;
+    long startNanos;
+
+    /****
+	 * Class: Request
+	 * Description: rows queued by one caller, filled in by the batching thread - or failed, if they can't be scored
+	****/
+    static class Request {
+        final double[][] rows;
+        final double[] predictions;
+        final long arrivalNanos = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile IllegalStateException failure; // why the rows weren't scored - null once predictions are filled in
+
+        Request(double[][] rows) {
+            this.rows = rows;
+            this.predictions = new double[rows.length];
+        }
+
+        void fail(IllegalStateException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+
+    ScoringServer(ModelFile model, int maxBatchRows, int maxWaitMicros) {
+        this.model = model;
+        this.maxBatchRows = maxBatchRows;
+        this.maxWaitNanos = maxWaitMicros * 1000L;
+    }
+
+    /****
+	 * Method: start
+	 * Description: starts the batching thread and listens on the loopback address. Port 0 picks a free port - see
+	 * getPort
+	****/
+    public void start(int port) throws IOException {
+        running = true;
+        startNanos = System.nanoTime();
+        batcher = new Thread(this::batchLoop, "scoring-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+
+        handlers = handlerExecutor();
+        // the JDK server writes headers and body separately - without TCP_NODELAY small replies wait on delayed ACKs
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/score", this::handleScore);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /****
+	 * Method: stop
+	 * Description: stops accepting requests and shuts the batching thread and the handlers down. Requests that are
+	 * still queued fail - their callers get an IllegalStateException
+	****/
+    public void stop() {
+        running = false;
+        server.stop(0);
+        batcher.interrupt();
+        handlers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /****
+	 * Method: score
+	 * Description: queues rows for the next micro-batch and waits for their predictions. Any number of threads can
+	 * call this at once - this is the whole scoring path, the HTTP handler only parses and formats. Throws
+	 * IllegalStateException if the server is stopped or the rows' batch couldn't be scored
+	****/
+    public double[] score(double[][] rows) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("the scoring server is stopped");
+        }
+        Request request = new Request(rows);
+        queue.add(request);
+        // stop() may have run since the check above, after the batching thread drained the queue for the last time
+        if (!running && queue.remove(request)) {
+            throw new IllegalStateException("the scoring server is stopped");
+        }
+        request.done.await();
+        if (request.failure != null) {
+            throw request.failure;
+        }
+        latency.record(System.nanoTime() - request.arrivalNanos);
+        return request.predictions;
+    }
+
+    /****
+	 * Method: batchLoop
+	 * Description: the batching thread. Blocks for a first request, then keeps taking requests until the batch has
+	 * maxBatchRows rows or maxWaitNanos have passed since the first one arrived, and scores them all at once. If
+	 * scoring throws, only that batch's requests fail. When the server stops, every request not scored yet fails
+	****/
+    private void batchLoop() {
+        List<Request> batch = new ArrayList<Request>();
+        double[][] batchRows = new double[maxBatchRows][];
+        double[] batchPredictions = new double[maxBatchRows];
+        try {
+            while (running) {
+                Request first = queue.take();
+                batch.add(first);
+                int rows = first.rows.length;
+                long deadline = first.arrivalNanos + maxWaitNanos;
+                while (rows < maxBatchRows) {
+                    long wait = deadline - System.nanoTime();
+                    Request next = (wait > 0) ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    rows = rows + next.rows.length;
+                }
+
+                // one oversized request can make the batch bigger than maxBatchRows
+                if (rows > batchRows.length) {
+                    batchRows = new double[rows][];
+                    batchPredictions = new double[rows];
+                }
+                int offset = 0;
+                for (Request request : batch) {
+                    System.arraycopy(request.rows, 0, batchRows, offset, request.rows.length);
+                    offset = offset + request.rows.length;
+                }
+                try {
+                    model.predict(batchRows, 0, rows, batchPredictions, 0);
+                    offset = 0;
+                    for (Request request : batch) {
+                        System.arraycopy(batchPredictions, offset, request.predictions, 0, request.rows.length);
+                        offset = offset + request.rows.length;
+                        request.done.countDown();
+                    }
+                    requestCount.addAndGet(batch.size());
+                    rowCount.addAndGet(rows);
+                    batchCount.incrementAndGet();
+                } catch (RuntimeException except) {
+                    failedBatchCount.incrementAndGet();
+                    failAll(batch, new IllegalStateException("scoring failed: " + except, except));
+                } finally {
+                    Arrays.fill(batchRows, 0, rows, null); // don't keep the callers' rows alive
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException except) {
+            // stop() was called
+        } finally {
+            IllegalStateException stopped = new IllegalStateException("the scoring server is stopped");
+            failAll(batch, stopped);
+            List<Request> pending = new ArrayList<Request>();
+            queue.drainTo(pending);
+            failAll(pending, stopped);
+        }
+    }
+
+    private static void failAll(List<Request> requests, IllegalStateException failure) {
+        for (Request request : requests) {
+            request.fail(failure);
+        }
+    }
+
+    private void handleScore(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405, "POST rows to /score\n");
+                return;
+            }
+            double[][] rows;
+            try {
+                rows = parseRows(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1), model.getAttributeCount());
+            } catch (IllegalArgumentException except) {
+                reply(exchange, 400, except.getMessage() + "\n");
+                return;
+            }
+            double[] predictions;
+            try {
+                predictions = score(rows);
+            } catch (InterruptedException except) {
+                reply(exchange, 503, "the scoring server is stopping\n");
+                return;
+            } catch (IllegalStateException except) {
+                reply(exchange, 503, except.getMessage() + "\n");
+                return;
+            }
+            StringBuilder body = new StringBuilder(predictions.length * 8);
+            for (double prediction : predictions) {
+                body.append(prediction).append('\n');
+            }
+            reply(exchange, 200, body.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            reply(exchange, 200, getStats());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /****
+	 * Method: getStats
+	 * Description: counters since start, throughput in rows and requests per second, and latency percentiles (queue
+	 * wait plus scoring) over the last LATENCY_WINDOW requests
+	****/
+    public String getStats() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long requests = requestCount.get();
+        long rows = rowCount.get();
+        long batches = batchCount.get();
+        StringBuilder stats = new StringBuilder();
+        stats.append("requests=").append(requests).append('\n');
+        stats.append("rows=").append(rows).append('\n');
+        stats.append("batches=").append(batches).append('\n');
+        stats.append("failed_batches=").append(failedBatchCount.get()).append('\n');
+        stats.append("mean_batch_rows=").append((batches == 0) ? 0 : (double) rows / batches).append('\n');
+        stats.append("requests_per_second=").append(requests / seconds).append('\n');
+        stats.append("rows_per_second=").append(rows / seconds).append('\n');
+        stats.append("p50_micros=").append(latency.percentile(0.50) / 1000.0).append('\n');
+        stats.append("p99_micros=").append(latency.percentile(0.99) / 1000.0).append('\n');
+        return stats.toString();
+    }
+
+    /****
+	 * Method: parseRows
+	 * Description: parses a request body of comma separated rows, one per line. Every row needs at least
+	 * attributeCount values, extra values are ignored
+	****/
+    static double[][] parseRows(String body, int attributeCount) {
+        List<double[]> rows = new ArrayList<double[]>();
+        for (String line : body.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < attributeCount) {
+                throw new IllegalArgumentException("row " + rows.size() + " has " + fields.length + " values, expected " + attributeCount);
+            }
+            double[] row = new double[fields.length];
+            for (int j = 0; j < fields.length; j++) {
+                try {
+                    row[j] = Double.parseDouble(fields[j].trim());
+                } catch (NumberFormatException except) {
+                    throw new IllegalArgumentException("row " + rows.size() + " has a bad value: " + fields[j]);
+                }
+            }
+            rows.add(row);
+        }
+        return rows.toArray(new double[rows.size()][]);
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /****
+	 * Method: handlerExecutor
+	 * Description: a virtual thread per connection if the JVM supports it, looked up reflectively so the class still
+	 * compiles and runs on Java 17, otherwise a fixed pool of FALLBACK_HANDLER_THREADS
+	****/
+    static ExecutorService handlerExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException except) {
+            return Executors.newFixedThreadPool(FALLBACK_HANDLER_THREADS);
+        }
+    }
+
+    /****
+	 * Class: LatencyStats
+	 * Description: ring buffer of the most recent latencies in nanoseconds. Percentiles sort a copy, so recording stays
+	 * cheap and only a stats request pays for the sort
+	****/
+    static class LatencyStats {
+        final long[] window;
+        long count = 0;
+
+        LatencyStats(int size) {
+            window = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            window[(int) (count % window.length)] = nanos;
+            count++;
+        }
+
+        long percentile(double p) {
+            long[] sorted;
+            synchronized (this) {
+                sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(rank, 0)];
+        }
+    }
+
+    /****
+	 * Method: runLoad
+	 * Description: localhost load test - clients threads each send requestsPerClient requests of rowsPerRequest rows
+	 * taken from data, and every reply is checked against the model scored directly. Prints the client side latency
+	 * and the server's stats
+	****/
+    static void runLoad(ScoringServer scoringServer, Dataset data, int clients, int requestsPerClient, int rowsPerRequest) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI scoreUri = URI.create("http://127.0.0.1:" + scoringServer.getPort() + "/score");
+        LatencyStats clientLatency = new LatencyStats(LATENCY_WINDOW);
+        AtomicLong mismatches = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+
+        Thread[] threads = new Thread[clients];
+        long startTime = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int clientNumber = c;
+            threads[c] = new Thread(() -> {
+                for (int r = 0; r < requestsPerClient; r++) {
+                    int firstRow = ((clientNumber * requestsPerClient + r) * rowsPerRequest) % data.rows;
+                    StringBuilder body = new StringBuilder();
+                    double[] expected = new double[rowsPerRequest];
+                    for (int k = 0; k < rowsPerRequest; k++) {
+                        int row = (firstRow + k) % data.rows;
+                        for (int j = 0; j < data.getAttributeCount(); j++) {
+                            body.append((j == 0) ? "" : ",").append(data.value(j, row));
+                        }
+                        body.append('\n');
+                        expected[k] = scoringServer.model.predict(data, row);
+                    }
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(HttpRequest.newBuilder(scoreUri).POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                        clientLatency.record(System.nanoTime() - sent);
+                        String[] lines = response.body().split("\n");
+                        if (response.statusCode() != 200 || lines.length != rowsPerRequest) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        for (int k = 0; k < rowsPerRequest; k++) {
+                            if (Double.parseDouble(lines[k]) != expected[k]) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException | InterruptedException except) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println("client requests=" + (long) clients * requestsPerClient + " failures=" + failures.get() + " mismatches=" + mismatches.get());
+        System.out.println("client requests_per_second=" + (clients * requestsPerClient / seconds));
+        System.out.println("client p50_micros=" + clientLatency.percentile(0.50) / 1000.0 + " p99_micros=" + clientLatency.percentile(0.99) / 1000.0);
+        System.out.print(scoringServer.getStats());
+    }
+
+    /****
+	 * Method: main
+	 * Description: java ScoringServer serve <model file> <port> [max batch rows] [max wait micros]
+	 * or java ScoringServer load <model file> <column file> <clients> <requests per client> <rows per request> - starts
+	 * a server on a free localhost port, drives it with rows from the column file and prints the stats
+	****/
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("serve")) {
+            int maxBatchRows = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_MAX_BATCH_ROWS;
+            int maxWaitMicros = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_MAX_WAIT_MICROS;
+            ScoringServer scoringServer = new ScoringServer(ModelFile.map(args[1]), maxBatchRows, maxWaitMicros);
+            scoringServer.start(Integer.parseInt(args[2]));
+            System.out.println("scoring " + args[1] + " on http://127.0.0.1:" + scoringServer.getPort() + "/score");
+        } else if (args.length == 6 && args[0].equals("load")) {
+            ScoringServer scoringServer = new ScoringServer(ModelFile.map(args[1]), DEFAULT_MAX_BATCH_ROWS, DEFAULT_MAX_WAIT_MICROS);
+            scoringServer.start(0);
+            runLoad(scoringServer, ColumnFile.map(args[2]).toDataset(), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+            scoringServer.stop();
+        } else {
+            System.out.println("usage: java ScoringServer serve <model file> <port> [max batch rows] [max wait micros]");
+            System.out.println("       java ScoringServer load <model file> <column file> <clients> <requests per client> <rows per request>");
+            System.exit(1);
+        }
+    }
+}
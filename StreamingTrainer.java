@@ -0,0 +1,602 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/****
+ * Class: StreamingTrainer
+ * Description: out-of-core training from a column file for data sets that don't fit in the heap. The tree is grown
+ * one level at a time: each pass streams the file in chunks of rows, moves every row from its node to the child it
+ * goes to, and adds it to that child's histogram (the same binned label statistics HistogramSplitter uses), then every
+ * node of the level picks its split from its histogram. The only per-row state kept in memory is the id of the open
+ * node each row is in, one int per row. The first pass finds the classes or the label mean and draws the sample the
+ * numeric bins come from - with at most BIN_SAMPLE_ROWS rows every value is used, and the tree is the one histogram
+ * training grows in memory. The second pass writes every attribute's bins to a temporary file next to the column file,
+ * one byte per value, and each level reads that file and the labels instead of the 8 byte values. A tree of depth d
+ * costs d + 3 sequential passes, and the heap only has to hold the row node ids, the tree and the histograms
+ *
+ * Usage: java StreamingTrainer <column file> [model file] [error threshold]
+****/
+public class StreamingTrainer {
+    static final int CHUNK_ROWS = 1 << 16; // rows read from the file at a time
+    static final int BIN_SAMPLE_ROWS = 1 << 18; // numeric bins come from a uniform sample of at most this many rows
+    static final int LEAF = -1; // nodeOf entry of a row that has reached a leaf
+
+    final ColumnFile file;
+    final File directory; // where the bin file is written
+    final boolean[] categoricalAttribute;
+    final boolean classification;
+    final int columns;
+    final TreeOptions options;
+    final int[] nodeOf; // row -> index of its node in the current level, or LEAF
+    HistogramSplitter splitter;
+    ByteBuffer[] binColumns; // the mapped bin file - each attribute's bin of every row
+    int classCount = 1; // classification - number of classes, 1 for regression so histograms index the same way
+    int passes = 0;
+
+    /****
+	 * Class: StreamNode
+	 * Description: one node of the tree being grown. Its statistics come from the pass that built its level, and its
+	 * histogram is dropped once it has picked a split
+	****/
+    static class StreamNode {
+        final int depth;
+        HistogramSplitter.Histogram histogram;
+        double labelSum; // regression - sum of the node's labels
+        int weight; // rows at the node
+        int splitIndex = -1; // attribute the node splits on, -1 for a leaf
+        int splitBin; // numeric splits - rows in this bin or a lower one go left
+        double splitValue; // numeric splits - rows with values <= this go left
+        int[] childOfBin; // splits - index in the next level of the child each bin goes to, -1 if none
+        double value; // leaves: the prediction. categorical splits: the prediction for a category with no child
+
+        StreamNode(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    StreamingTrainer(String columnFile, TreeOptions options) throws IOException {
+        this.file = ColumnFile.map(columnFile);
+        this.directory = new File(columnFile).getAbsoluteFile().getParentFile();
+        this.categoricalAttribute = file.getCatArray();
+        this.classification = categoricalAttribute[categoricalAttribute.length - 1];
+        this.columns = file.getAttributeCount();
+        this.options = options;
+        this.nodeOf = new int[file.getRowCount()];
+    }
+
+    /****
+	 * Method: train
+	 * Description: grows a tree from a column file without loading it. options.errorThreshold stops regression nodes
+	 * as in memory, and options.histogramBudget caps the histogram bytes held in one pass - a level whose histograms
+	 * don't fit is built over several passes
+	****/
+    public static CompiledTree train(String columnFile, TreeOptions options) throws IOException {
+        return new StreamingTrainer(columnFile, options).grow();
+    }
+
+    /****
+	 * Method: grow
+	 * Description: bins the attributes, then builds the tree level by level until every node is a leaf
+	****/
+    CompiledTree grow() throws IOException {
+        if (file.getRowCount() == 0) {
+            throw new IllegalArgumentException("cannot train on a file with no rows");
+        }
+        prepare();
+        File binFile = File.createTempFile("bins", ".tmp", directory);
+        try {
+            writeBins(binFile);
+            return growLevels();
+        } finally {
+            binColumns = null;
+            if (!binFile.delete()) {
+                binFile.deleteOnExit(); // still mapped on some platforms
+            }
+        }
+    }
+
+    /****
+	 * Method: growLevels
+	 * Description: builds the tree from the root down, one level per pass over the bins
+	****/
+    private CompiledTree growLevels() {
+        List<StreamNode> tree = new ArrayList<StreamNode>();
+        List<StreamNode> level = new ArrayList<StreamNode>();
+        level.add(new StreamNode(0));
+        buildLevel(null, level);
+        while (!level.isEmpty()) {
+            List<StreamNode> nextLevel = new ArrayList<StreamNode>();
+            for (StreamNode node : level) {
+                tree.add(node);
+                decide(node, nextLevel);
+            }
+            if (!nextLevel.isEmpty()) {
+                buildLevel(level, nextLevel);
+            }
+            level = nextLevel;
+        }
+        return compile(tree);
+    }
+
+    /****
+	 * Method: prepare
+	 * Description: the first pass - collects the classes (classification) or the label mean (regression) and a
+	 * reservoir sample of rows, and bins the numeric attributes from the sorted sample values
+	****/
+    private void prepare() {
+        int rows = file.getRowCount();
+        int sampleRows = Math.min(rows, BIN_SAMPLE_ROWS);
+        double[][] samples = new double[columns][];
+        int[] cardinality = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            if (file.isEncoded(column)) {
+                cardinality[column] = file.getDictionary(column).length;
+            } else if (!categoricalAttribute[column]) {
+                samples[column] = new double[sampleRows];
+            } else {
+                throw new IllegalArgumentException("categorical attribute " + column + " isn't dictionary encoded in the column file");
+            }
+        }
+
+        // every row is kept until the sample is full, then row r replaces a random entry with chance sampleRows / (r + 1)
+        SplittableRandom random = new SplittableRandom(options.seed);
+        TreeSet<Double> classSet = new TreeSet<Double>();
+        double labelSum = 0;
+        DoubleBuffer labels = file.getLabels();
+        DoubleBuffer[] numeric = new DoubleBuffer[columns];
+        for (int column = 0; column < columns; column++) {
+            if (samples[column] != null) {
+                numeric[column] = file.getColumn(column);
+            }
+        }
+        double[] chunk = new double[CHUNK_ROWS];
+        int[] slot = new int[CHUNK_ROWS]; // sample entry each row of the chunk goes to, -1 if none
+        for (int chunkStart = 0; chunkStart < rows; chunkStart = chunkStart + CHUNK_ROWS) {
+            int n = Math.min(CHUNK_ROWS, rows - chunkStart);
+            labels.get(chunk, 0, n);
+            for (int i = 0; i < n; i++) {
+                if (classification) {
+                    classSet.add(chunk[i]);
+                } else {
+                    labelSum = labelSum + chunk[i];
+                }
+                long row = chunkStart + i;
+                if (row < sampleRows) {
+                    slot[i] = (int) row;
+                } else {
+                    long draw = random.nextLong(row + 1);
+                    slot[i] = (draw < sampleRows) ? (int) draw : -1;
+                }
+            }
+            for (int column = 0; column < columns; column++) {
+                if (samples[column] != null) {
+                    numeric[column].get(chunk, 0, n);
+                    for (int i = 0; i < n; i++) {
+                        if (slot[i] >= 0) {
+                            samples[column][slot[i]] = chunk[i];
+                        }
+                    }
+                }
+            }
+            TreeEvents.rowsScanned.add((long) n * (columns + 1));
+        }
+        passes++;
+
+        double[] classes = null;
+        double labelMean = 0;
+        if (classification) {
+            classes = new double[classSet.size()];
+            int c = 0;
+            for (double label : classSet) {
+                classes[c] = label;
+                c++;
+            }
+            classCount = classes.length;
+        } else {
+            labelMean = labelSum / rows;
+        }
+        for (int column = 0; column < columns; column++) {
+            if (samples[column] != null) {
+                Arrays.sort(samples[column]);
+                TreeEvents.sortsPerformed.increment();
+            }
+        }
+        splitter = new HistogramSplitter(categoricalAttribute, samples, cardinality, classes, labelMean);
+    }
+
+    /****
+	 * Method: writeBins
+	 * Description: the second pass - bins every value and writes the bins column by column, one byte per row, then maps
+	 * the columns of the bin file. Category codes are their own bins
+	****/
+    private void writeBins(File binFile) throws IOException {
+        int rows = file.getRowCount();
+        try (RandomAccessFile output = new RandomAccessFile(binFile, "rw"); FileChannel channel = output.getChannel()) {
+            double[] chunkValues = new double[CHUNK_ROWS];
+            byte[] bins = new byte[CHUNK_ROWS];
+            for (int column = 0; column < columns; column++) {
+                ByteBuffer codes = file.isEncoded(column) ? file.getByteCodes(column) : null;
+                DoubleBuffer numeric = file.isEncoded(column) ? null : file.getColumn(column);
+                long offset = (long) column * rows;
+                for (int chunkStart = 0; chunkStart < rows; chunkStart = chunkStart + CHUNK_ROWS) {
+                    int n = Math.min(CHUNK_ROWS, rows - chunkStart);
+                    if (codes != null) {
+                        codes.get(bins, 0, n);
+                    } else {
+                        numeric.get(chunkValues, 0, n);
+                        for (int i = 0; i < n; i++) {
+                            bins[i] = (byte) splitter.bin(column, chunkValues[i]);
+                        }
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(bins, 0, n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, offset + chunkStart + buffer.position());
+                    }
+                }
+                TreeEvents.rowsScanned.add(rows);
+            }
+
+            binColumns = new ByteBuffer[columns];
+            for (int column = 0; column < columns; column++) {
+                binColumns[column] = channel.map(FileChannel.MapMode.READ_ONLY, (long) column * rows, rows);
+            }
+        }
+        passes++;
+    }
+
+    /****
+	 * Method: buildLevel
+	 * Description: fills in the statistics and histograms of the nodes of a new level. Rows are moved from their node
+	 * in parents (null for the root level, which holds every row) to its child on the first pass. The level is built
+	 * in groups of nodes whose histograms fit in options.histogramBudget (and a quarter of the heap), one pass per group
+	****/
+    private void buildLevel(List<StreamNode> parents, List<StreamNode> level) {
+        long nodeBytes = 0;
+        for (int column = 0; column < columns; column++) {
+            nodeBytes = nodeBytes + TreeEvents.arrayBytes(splitter.binCount[column] * classCount, 4);
+            if (!classification) {
+                nodeBytes = nodeBytes + TreeEvents.arrayBytes(splitter.binCount[column], 8);
+            }
+        }
+        long budget = Math.min(options.histogramBudget, Runtime.getRuntime().maxMemory() / 4);
+        int groupSize = (int) Math.max(1, Math.min(level.size(), budget / nodeBytes));
+        for (int groupStart = 0; groupStart < level.size(); groupStart = groupStart + groupSize) {
+            int groupEnd = Math.min(level.size(), groupStart + groupSize);
+            for (int k = groupStart; k < groupEnd; k++) {
+                level.get(k).histogram = new HistogramSplitter.Histogram(splitter.binCount, classCount, classification);
+            }
+            TreeEvents.nodeBytesAllocated.add(nodeBytes * (groupEnd - groupStart));
+            streamPass((groupStart == 0) ? parents : null, level, groupStart, groupEnd);
+        }
+    }
+
+    /****
+	 * Method: streamPass
+	 * Description: one pass over the bins and labels. If parents is set, each row first moves from its parent to the child its
+	 * bin of the parent's split attribute leads to (or to LEAF). Rows now in level nodes [groupStart, groupEnd) are
+	 * added to those nodes' histograms
+	****/
+    private void streamPass(List<StreamNode> parents, List<StreamNode> level, int groupStart, int groupEnd) {
+        int rows = file.getRowCount();
+        DoubleBuffer labels = file.getLabels();
+        ByteBuffer[] bins = new ByteBuffer[columns];
+        for (int column = 0; column < columns; column++) {
+            bins[column] = binColumns[column].duplicate();
+        }
+        double[] chunkLabels = new double[CHUNK_ROWS];
+        byte[][] chunkBins = new byte[columns][CHUNK_ROWS];
+        int[] chunkNode = new int[CHUNK_ROWS]; // level node of each row of the chunk relative to groupStart, -1 if outside the group
+        int[] chunkClass = new int[CHUNK_ROWS];
+        int[][] groupCounts = new int[groupEnd - groupStart][]; // the group's histogram counts of the column being filled
+        double[][] groupSums = new double[groupEnd - groupStart][];
+
+        for (int chunkStart = 0; chunkStart < rows; chunkStart = chunkStart + CHUNK_ROWS) {
+            int n = Math.min(CHUNK_ROWS, rows - chunkStart);
+            labels.get(chunkLabels, 0, n);
+            for (int column = 0; column < columns; column++) {
+                bins[column].get(chunkBins[column], 0, n);
+            }
+
+            for (int i = 0; i < n; i++) {
+                int row = chunkStart + i;
+                int node = nodeOf[row];
+                if (parents != null && node != LEAF) {
+                    StreamNode parent = parents.get(node);
+                    node = (parent.splitIndex < 0) ? LEAF : parent.childOfBin[chunkBins[parent.splitIndex][i] & 0xFF];
+                    nodeOf[row] = node;
+                }
+                chunkNode[i] = (node >= groupStart && node < groupEnd) ? node - groupStart : -1;
+                if (classification && chunkNode[i] >= 0) {
+                    chunkClass[i] = Arrays.binarySearch(splitter.classes, chunkLabels[i]);
+                }
+            }
+
+            // node totals, then one column at a time so each histogram column is filled while it is in cache
+            for (int i = 0; i < n; i++) {
+                if (chunkNode[i] >= 0) {
+                    StreamNode node = level.get(groupStart + chunkNode[i]);
+                    node.weight++;
+                    if (!classification) {
+                        double y = chunkLabels[i] - splitter.labelMean;
+                        node.labelSum = node.labelSum + chunkLabels[i];
+                        node.histogram.totalSum = node.histogram.totalSum + y;
+                        node.histogram.totalSquares = node.histogram.totalSquares + y * y;
+                    }
+                }
+            }
+            for (int column = 0; column < columns; column++) {
+                byte[] columnBins = chunkBins[column];
+                for (int k = 0; k < groupCounts.length; k++) {
+                    HistogramSplitter.Histogram histogram = level.get(groupStart + k).histogram;
+                    groupCounts[k] = histogram.counts[column];
+                    if (!classification) {
+                        groupSums[k] = histogram.sums[column];
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    int node = chunkNode[i];
+                    if (node < 0) {
+                        continue;
+                    }
+                    int bin = columnBins[i] & 0xFF;
+                    if (classification) {
+                        groupCounts[node][bin * classCount + chunkClass[i]]++;
+                    } else {
+                        groupCounts[node][bin]++;
+                        groupSums[node][bin] = groupSums[node][bin] + (chunkLabels[i] - splitter.labelMean);
+                    }
+                }
+            }
+            TreeEvents.rowsScanned.add((long) n * (columns + 1));
+        }
+        passes++;
+    }
+
+    /****
+	 * Method: decide
+	 * Description: makes a node a leaf or picks its split, with the same stopping rules and split choice as growing the
+	 * tree in memory, and adds its children to the next level. The node's histogram is dropped either way
+	****/
+    private void decide(StreamNode node, List<StreamNode> nextLevel) {
+        TreeEvents.nodesCreated.increment();
+        HistogramSplitter.Histogram histogram = node.histogram;
+        node.histogram = null;
+
+        // the class counts of the node are the sums of any one attribute's histogram over its bins
+        int[] classCounts = new int[classCount];
+        double prediction;
+        double entropy = 0;
+        if (classification) {
+            int[] counts = histogram.counts[0];
+            for (int b = 0; b < counts.length; b++) {
+                classCounts[b % classCount] += counts[b];
+            }
+            int mostFrequent = -1; // ties go to the smallest class
+            for (int c = 0; c < classCount; c++) {
+                if (classCounts[c] > 0 && (mostFrequent == -1 || classCounts[c] > classCounts[mostFrequent])) {
+                    mostFrequent = c;
+                }
+            }
+            prediction = splitter.classes[mostFrequent];
+            entropy = entropy(classCounts, node.weight);
+        } else {
+            prediction = node.labelSum / node.weight;
+        }
+        node.value = prediction;
+
+        boolean stop;
+        if (classification) {
+            stop = entropy == 0 || !anySplitPossible(histogram);
+        } else {
+            double meanSquaredError = Math.max(histogram.totalSquares - histogram.totalSum * histogram.totalSum / node.weight, 0) / node.weight;
+            stop = meanSquaredError <= options.errorThreshold;
+        }
+        if (stop) {
+            return;
+        }
+
+        TreeEvents.SplitSearchEvent event = new TreeEvents.SplitSearchEvent();
+        event.begin();
+        int[] allColumns = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            allColumns[column] = column;
+        }
+        double[] splitValueArray = new double[columns];
+        int splitIndex;
+        if (classification) {
+            double[] featureEntropy = new double[columns];
+            double[] gainRatio = new double[columns];
+            for (int column = 0; column < columns; column++) {
+                splitter.scoreClassification(histogram, node.weight, entropy, column, featureEntropy, gainRatio, splitValueArray);
+            }
+            splitIndex = Node.bestClassificationSplit(allColumns, featureEntropy, gainRatio, false);
+        } else {
+            double[] meanSquaredError = new double[columns];
+            for (int column = 0; column < columns; column++) {
+                meanSquaredError[column] = splitter.regressionError(histogram, node.weight, column, splitValueArray);
+            }
+            splitIndex = Node.bestRegressionSplit(allColumns, meanSquaredError, false);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = node.depth;
+            event.rows = node.weight;
+            event.attributesEvaluated = columns;
+            event.chosenAttribute = splitIndex;
+            event.histogram = true;
+            event.commit();
+        }
+        if (splitIndex < 0) {
+            return;
+        }
+
+        // a child for each category present at the node, or for each side of the cut
+        int bins = splitter.binCount[splitIndex];
+        int[] binWeight = new int[bins];
+        int[] counts = histogram.counts[splitIndex];
+        for (int b = 0; b < counts.length; b++) {
+            binWeight[b / classCount] += counts[b];
+        }
+        int[] childOfBin = new int[bins];
+        int children = 0;
+        if (categoricalAttribute[splitIndex]) {
+            for (int b = 0; b < bins; b++) {
+                childOfBin[b] = (binWeight[b] > 0) ? nextLevel.size() + children++ : -1;
+            }
+        } else {
+            node.splitValue = splitValueArray[splitIndex];
+            node.splitBin = Arrays.binarySearch(splitter.cutValues[splitIndex], node.splitValue);
+            int leftWeight = 0;
+            for (int b = 0; b <= node.splitBin; b++) {
+                leftWeight = leftWeight + binWeight[b];
+            }
+            if (leftWeight > 0 && leftWeight < node.weight) {
+                for (int b = 0; b < bins; b++) {
+                    childOfBin[b] = nextLevel.size() + ((b <= node.splitBin) ? 0 : 1);
+                }
+                children = 2;
+            }
+        }
+        if (children < 2) {
+            return; // the split would hand every row to one child
+        }
+
+        node.splitIndex = splitIndex;
+        node.childOfBin = childOfBin;
+        for (int k = 0; k < children; k++) {
+            nextLevel.add(new StreamNode(node.depth + 1));
+        }
+    }
+
+    /****
+	 * Method: anySplitPossible
+	 * Description: whether some attribute has rows of the node in two different bins
+	****/
+    private boolean anySplitPossible(HistogramSplitter.Histogram histogram) {
+        for (int column = 0; column < columns; column++) {
+            int[] counts = histogram.counts[column];
+            int firstBin = -1;
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] > 0) {
+                    if (firstBin >= 0 && firstBin != b / classCount) {
+                        return true;
+                    }
+                    firstBin = b / classCount;
+                }
+            }
+        }
+        return false;
+    }
+
+    /****
+	 * Method: entropy
+	 * Description: entropy of class counts, worked out as Node.entropy does without its n ln n table - a table as long
+	 * as the row count would be as large as the rows themselves
+	****/
+    static double entropy(int[] counts, int rows) {
+        double sum = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                sum = sum + count * Math.log(count);
+            }
+        }
+        return Math.max(rows * Math.log(rows) - sum, 0) / rows;
+    }
+
+    /****
+	 * Method: compile
+	 * Description: turns the grown nodes into a CompiledTree. Nodes were numbered level by level, which is the breadth
+	 * first order CompiledTree uses. A category with no child at a split predicts the node's majority class or mean
+	****/
+    private CompiledTree compile(List<StreamNode> tree) {
+        int count = tree.size();
+        byte[] kind = new byte[count];
+        int[] feature = new int[count];
+        double[] threshold = new double[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        double[] value = new double[count];
+        double[][] categories = new double[columns][];
+        int tableSize = 0;
+        for (int column = 0; column < columns; column++) {
+            categories[column] = file.isEncoded(column) ? file.getDictionary(column) : new double[0];
+        }
+        for (StreamNode node : tree) {
+            if (node.splitIndex >= 0 && categoricalAttribute[node.splitIndex]) {
+                tableSize = tableSize + categories[node.splitIndex].length;
+            }
+        }
+        int[] childTable = new int[tableSize];
+        Arrays.fill(childTable, -1);
+
+        // the children of each level start right after the level itself
+        int nextLevelStart = 0;
+        int levelDepth = -1;
+        int nextTableEntry = 0;
+        for (int id = 0; id < count; id++) {
+            StreamNode node = tree.get(id);
+            if (node.depth != levelDepth) {
+                levelDepth = node.depth;
+                nextLevelStart = id;
+                while (nextLevelStart < count && tree.get(nextLevelStart).depth == levelDepth) {
+                    nextLevelStart++;
+                }
+            }
+            value[id] = node.value;
+            if (node.splitIndex < 0) {
+                kind[id] = CompiledTree.LEAF;
+            } else if (categoricalAttribute[node.splitIndex]) {
+                kind[id] = CompiledTree.CATEGORICAL;
+                feature[id] = node.splitIndex;
+                left[id] = nextTableEntry;
+                for (int b = 0; b < node.childOfBin.length; b++) {
+                    if (node.childOfBin[b] >= 0) {
+                        childTable[nextTableEntry + b] = nextLevelStart + node.childOfBin[b];
+                    }
+                }
+                nextTableEntry = nextTableEntry + categories[node.splitIndex].length;
+            } else {
+                kind[id] = CompiledTree.NUMERIC;
+                feature[id] = node.splitIndex;
+                threshold[id] = node.splitValue;
+                left[id] = nextLevelStart + node.childOfBin[0];
+                right[id] = nextLevelStart + node.childOfBin[node.childOfBin.length - 1];
+            }
+        }
+        return new CompiledTree(kind, feature, threshold, left, right, value, childTable, categories);
+    }
+
+    /****
+	 * Method: main
+	 * Description: trains a tree from a column file, reports the passes, tree size, time and heap in use, and writes
+	 * the tree as a ModelFile if a model file is given
+	****/
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: java StreamingTrainer <column file> [model file] [error threshold]");
+            System.exit(1);
+        }
+        TreeOptions options = new TreeOptions();
+        options.errorThreshold = (args.length > 2) ? Double.parseDouble(args[2]) : 0;
+
+        long startTime = System.nanoTime();
+        StreamingTrainer trainer = new StreamingTrainer(args[0], options);
+        CompiledTree tree = trainer.grow();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%d rows, %d passes, %d nodes in %.3f s, %.1f MB heap in use%n", trainer.file.getRowCount(), trainer.passes,
+                tree.getNodeCount(), seconds, (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0);
+
+        if (args.length > 1) {
+            ModelFile.write(tree, args[1]);
+        }
+    }
+}
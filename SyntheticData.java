@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/****
+ * Class: SyntheticData
+ * Description: generates data sets of any size with the layout of one of the bundled data sets - the same attributes,
+ * the same categorical/numeric split as DataStream.getCatArray and the same category dictionaries. Numeric values are
+ * resampled from the bundled column with a little jitter, categories are drawn with their bundled frequencies, and the
+ * label comes from a random "true concept" tree of conceptDepth levels, with noise added. Rows are generated in
+ * parallel chunks, each with its own seed, so the output only depends on the seed and not on the thread count
+****/
+public class SyntheticData {
+    static final int CHUNK_ROWS = 1 << 16;
+    static final double JITTER = 0.01; // numeric jitter as a fraction of the column's standard deviation
+
+    final Dataset template; // the bundled data set, categorical attributes encoded
+    final boolean[] categoricalAttribute;
+    final boolean isClassification;
+    final double[] classes; // classification - the bundled classes, sorted
+    final double labelDeviation; // regression - standard deviation of the bundled labels
+    final double[] columnDeviation; // numeric attributes - standard deviation of the bundled column
+    final double noise; // classification: chance a label is replaced by a random class. regression: label noise in label standard deviations
+    final long seed;
+
+    // the concept - a complete binary tree stored heap style, node k has children 2k + 1 and 2k + 2
+    final int conceptDepth;
+    final int[] conceptFeature;
+    final double[] conceptThreshold; // numeric splits - values <= threshold go left
+    final boolean[][] conceptLeft; // categorical splits - category code -> goes left
+    final double[] conceptLeaf; // label of each of the 2^depth leaves
+
+    /****
+	 * Method: SyntheticData constructor
+	 * Description: reads the bundled data set as the template and draws the concept tree from the seed
+	****/
+    SyntheticData(int dataSetNumber, int conceptDepth, double noise, long seed) {
+        this.categoricalAttribute = DataStream.getCatArray(dataSetNumber);
+        this.template = DataStream.getData(dataSetNumber, 0).encode(categoricalAttribute);
+        this.isClassification = categoricalAttribute[categoricalAttribute.length - 1];
+        this.noise = noise;
+        this.seed = seed;
+        this.conceptDepth = conceptDepth;
+
+        double[] sortedLabels = template.labels.clone();
+        Arrays.sort(sortedLabels);
+        int classCount = 0;
+        for (int i = 0; i < sortedLabels.length; i++) {
+            if (i == 0 || sortedLabels[i] != sortedLabels[i - 1]) {
+                sortedLabels[classCount] = sortedLabels[i];
+                classCount++;
+            }
+        }
+        classes = Arrays.copyOf(sortedLabels, classCount);
+        labelDeviation = deviation(template.labels);
+        columnDeviation = new double[template.getAttributeCount()];
+        for (int j = 0; j < columnDeviation.length; j++) {
+            if (!template.isEncoded(j)) {
+                columnDeviation[j] = deviation(template.attributes[j]);
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int internalNodes = (1 << conceptDepth) - 1;
+        conceptFeature = new int[internalNodes];
+        conceptThreshold = new double[internalNodes];
+        conceptLeft = new boolean[internalNodes][];
+        for (int k = 0; k < internalNodes; k++) {
+            int feature = random.nextInt(template.getAttributeCount());
+            conceptFeature[k] = feature;
+            if (template.isEncoded(feature)) {
+                // a random non-trivial subset of the categories goes left, when there are at least two
+                int cardinality = template.getCardinality(feature);
+                conceptLeft[k] = new boolean[cardinality];
+                for (int code = 0; code < cardinality; code++) {
+                    conceptLeft[k][code] = random.nextBoolean();
+                }
+                if (cardinality > 1) {
+                    // one category forced to each side - right is drawn from the codes other than left
+                    int left = random.nextInt(cardinality);
+                    int right = (left + 1 + random.nextInt(cardinality - 1)) % cardinality;
+                    conceptLeft[k][left] = true;
+                    conceptLeft[k][right] = false;
+                }
+            } else {
+                conceptThreshold[k] = template.attributes[feature][random.nextInt(template.rows)];
+            }
+        }
+        conceptLeaf = new double[1 << conceptDepth];
+        int startClass = isClassification ? random.nextInt(classes.length) : 0;
+        for (int leaf = 0; leaf < conceptLeaf.length; leaf++) {
+            if (isClassification) {
+                // cycle through the classes from a random start, so every class is reachable when there are enough leaves
+                conceptLeaf[leaf] = classes[(startClass + leaf) % classes.length];
+            } else {
+                conceptLeaf[leaf] = template.labels[random.nextInt(template.rows)];
+            }
+        }
+    }
+
+    /****
+	 * Method: generate
+	 * Description: generates rows rows from the constructor's seed
+	****/
+    public Dataset generate(int rows) {
+        return generate(rows, seed);
+    }
+
+    /****
+	 * Method: generate
+	 * Description: generates rows rows labelled by the same concept, drawing the rows from rowSeed - different row
+	 * seeds give independent training, pruning and test sets. Categorical attributes come out dictionary encoded with
+	 * the template's dictionaries, so the result can be trained on directly
+	****/
+    public Dataset generate(int rows, long rowSeed) {
+        int attributeCount = template.getAttributeCount();
+        double[][] attributes = new double[attributeCount][];
+        byte[][] byteCodes = new byte[attributeCount][];
+        short[][] shortCodes = new short[attributeCount][];
+        double[][] dictionary = new double[attributeCount][];
+        for (int j = 0; j < attributeCount; j++) {
+            if (!template.isEncoded(j)) {
+                attributes[j] = new double[rows];
+            } else if (template.byteCodes[j] != null) {
+                byteCodes[j] = new byte[rows];
+                dictionary[j] = template.dictionary[j];
+            } else {
+                shortCodes[j] = new short[rows];
+                dictionary[j] = template.dictionary[j];
+            }
+        }
+        double[] labels = new double[rows];
+        Dataset data = new Dataset(attributes, byteCodes, shortCodes, dictionary, labels);
+
+        List<ForkJoinTask<?>> chunks = new ArrayList<ForkJoinTask<?>>();
+        for (int chunkStart = 0; chunkStart < rows; chunkStart = chunkStart + CHUNK_ROWS) {
+            int from = chunkStart;
+            int to = Math.min(rows, chunkStart + CHUNK_ROWS);
+            chunks.add(ForkJoinPool.commonPool().submit(() -> generateChunk(data, from, to, rowSeed)));
+        }
+        for (ForkJoinTask<?> chunk : chunks) {
+            chunk.join();
+        }
+        return data;
+    }
+
+    /****
+	 * Method: generateChunk
+	 * Description: fills rows [from, to) of a data set allocated by generate. The chunk's random numbers are seeded
+	 * from the row seed and the chunk position only
+	****/
+    private void generateChunk(Dataset data, int from, int to, long rowSeed) {
+        SplittableRandom random = new SplittableRandom(rowSeed ^ ((from / CHUNK_ROWS + 1) * 0x9E3779B97F4A7C15L));
+        int attributeCount = template.getAttributeCount();
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < attributeCount; j++) {
+                // taking the column value of a random template row keeps each attribute's distribution
+                int templateRow = random.nextInt(template.rows);
+                if (data.byteCodes[j] != null) {
+                    data.byteCodes[j][i] = template.byteCodes[j][templateRow];
+                } else if (data.shortCodes[j] != null) {
+                    data.shortCodes[j][i] = template.shortCodes[j][templateRow];
+                } else {
+                    data.attributes[j][i] = template.attributes[j][templateRow] + JITTER * columnDeviation[j] * random.nextGaussian();
+                }
+            }
+
+            double label = conceptLeaf[conceptLeafIndex(data, i)];
+            if (isClassification) {
+                if (random.nextDouble() < noise) {
+                    label = classes[random.nextInt(classes.length)];
+                }
+            } else {
+                label = label + noise * labelDeviation * random.nextGaussian();
+            }
+            data.labels[i] = label;
+        }
+    }
+
+    /****
+	 * Method: conceptLeafIndex
+	 * Description: walks the concept tree for one generated row and returns the leaf it ends in
+	****/
+    private int conceptLeafIndex(Dataset data, int row) {
+        int node = 0;
+        for (int level = 0; level < conceptDepth; level++) {
+            int feature = conceptFeature[node];
+            boolean left;
+            if (conceptLeft[node] != null) {
+                left = conceptLeft[node][data.code(feature, row)];
+            } else {
+                left = data.attributes[feature][row] <= conceptThreshold[node];
+            }
+            node = 2 * node + (left ? 1 : 2);
+        }
+        return node - conceptFeature.length;
+    }
+
+    public boolean[] getCatArray() {
+        return categoricalAttribute.clone();
+    }
+
+    private static double deviation(double[] values) {
+        double mean = 0;
+        for (double x : values) {
+            mean = mean + x / values.length;
+        }
+        double variance = 0;
+        for (double x : values) {
+            variance = variance + (x - mean) * (x - mean) / values.length;
+        }
+        return Math.sqrt(variance);
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+
+/****
+ * Class: TrainingIndex
+ * Description: row bookkeeping shared by every node of one tree while it is being built. Each node owns the same
+ * slice [start, end) of rowIndex and of every presorted column, so splitting a node only reorders its own slice
+****/
+class TrainingIndex {
+    final Dataset data; // training data with its categorical attributes dictionary encoded - never modified
+    final boolean[] categoricalAttribute;
+    final int[] rowIndex; // row indices into data with a weight above 0, partitioned in place as nodes split
+    final int[] rowWeight; // indexed by row - how many times the row counts, 1 for every row unless the index was built from a base index
+    final int[][] sortedIndex; // numeric attribute -> row indices sorted by that attribute's value (null for categorical attributes)
+    final int[] partitionBuffer; // scratch space the same size as rowIndex
+    final int[] rowChild; // indexed by row - which child a row goes to while its node is being split
+    final HistogramSplitter histogramSplitter; // binned split search - null when splits are found from the presorted columns
+    final TreeOptions options;
+    final double[] classes; // classification - distinct labels of the training data, sorted
+    final int[] labelClass; // classification - index into classes for each row
+    final double labelMean; // regression - mean label of the training data
+    final double[] nLogN; // nLogN[n] = n ln n for n = 0..total weight, so entropies of counts need no logs
+
+    /****
+	 * Method: TrainingIndex constructor
+	 * Description: sorts every numeric attribute once - nodes keep that order as they split, so split search never sorts.
+	 * With options.histogram set, attributes are binned instead and nothing is presorted
+	****/
+    TrainingIndex(Dataset data, boolean[] categoricalAttribute, TreeOptions options) {
+        boolean histogram = options.histogram;
+        this.options = options;
+        this.data = data.encode(categoricalAttribute);
+        this.categoricalAttribute = categoricalAttribute;
+        this.rowIndex = new int[data.rows];
+        this.rowWeight = new int[data.rows];
+        this.partitionBuffer = new int[data.rows];
+        this.rowChild = new int[data.rows];
+        for (int i = 0; i < data.rows; i++) {
+            rowIndex[i] = i;
+            rowWeight[i] = 1;
+        }
+
+        // class index of every row, or the label mean - node statistics are counted from these
+        if (categoricalAttribute[categoricalAttribute.length - 1]) {
+            double[] sortedLabels = data.labels.clone();
+            Arrays.sort(sortedLabels);
+            TreeEvents.sortsPerformed.increment();
+            int classCount = 0;
+            for (int i = 0; i < sortedLabels.length; i++) {
+                if (i == 0 || sortedLabels[i] != sortedLabels[i - 1]) {
+                    sortedLabels[classCount] = sortedLabels[i];
+                    classCount++;
+                }
+            }
+            classes = Arrays.copyOf(sortedLabels, classCount);
+            labelClass = new int[data.rows];
+            for (int i = 0; i < data.rows; i++) {
+                labelClass[i] = Arrays.binarySearch(classes, data.labels[i]);
+            }
+            labelMean = 0;
+        } else {
+            classes = null;
+            labelClass = null;
+            double sum = 0;
+            for (int i = 0; i < data.rows; i++) {
+                sum = sum + data.labels[i];
+            }
+            labelMean = sum / data.rows;
+        }
+        nLogN = new double[data.rows + 1];
+        for (int n = 1; n <= data.rows; n++) {
+            nLogN[n] = n * Math.log(n);
+        }
+
+        sortedIndex = new int[data.attributes.length][];
+        histogramSplitter = histogram ? new HistogramSplitter(this) : null;
+        for (int column = 0; column < data.attributes.length; column++) {
+            if (!histogram && !categoricalAttribute[column]) {
+                sortedIndex[column] = rowIndex.clone();
+                sortByValue(sortedIndex[column], partitionBuffer, 0, data.rows, data.attributes[column]);
+                TreeEvents.sortsPerformed.increment();
+            }
+        }
+    }
+
+    /****
+	 * Method: TrainingIndex constructor
+	 * Description: index over the same training data as base with an integer weight per row - a bootstrap sample or a
+	 * fold mask, without copying any rows. Rows with weight 0 are left out. The data and class numbering are shared
+	 * with base, and each presorted column is base's order with the left out rows filtered away, so nothing is sorted
+	 * again. The label mean and histogram bins are shared with base too, unless ownStatistics is set - then they come
+	 * from this index's rows only, as if the rows had been copied out, so a held out fold doesn't shape the tree
+	****/
+    TrainingIndex(TrainingIndex base, int[] rowWeight, TreeOptions options, boolean ownStatistics) {
+        this.options = options;
+        this.data = base.data;
+        this.categoricalAttribute = base.categoricalAttribute;
+        this.rowWeight = rowWeight;
+        this.classes = base.classes;
+        this.labelClass = base.labelClass;
+        this.rowChild = new int[data.rows];
+
+        int rows = 0;
+        long totalWeight = 0;
+        double labelSum = 0;
+        for (int i = 0; i < data.rows; i++) {
+            if (rowWeight[i] > 0) {
+                rows++;
+                totalWeight = totalWeight + rowWeight[i];
+                labelSum = labelSum + rowWeight[i] * data.labels[i];
+            }
+        }
+        if (totalWeight > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("row weights add up to " + totalWeight + ", at most " + (Integer.MAX_VALUE - 1) + " are supported");
+        }
+        this.rowIndex = new int[rows];
+        this.partitionBuffer = new int[rows];
+        int next = 0;
+        for (int i = 0; i < data.rows; i++) {
+            if (rowWeight[i] > 0) {
+                rowIndex[next] = i;
+                next++;
+            }
+        }
+        if (base.nLogN.length > totalWeight) {
+            nLogN = base.nLogN;
+        } else {
+            nLogN = new double[(int) totalWeight + 1];
+            for (int n = 1; n <= totalWeight; n++) {
+                nLogN[n] = n * Math.log(n);
+            }
+        }
+
+        sortedIndex = new int[base.sortedIndex.length][];
+        for (int column = 0; column < sortedIndex.length; column++) {
+            int[] baseOrder = base.sortedIndex[column];
+            if (baseOrder != null) {
+                int[] order = new int[rows];
+                int position = 0;
+                for (int row : baseOrder) {
+                    if (rowWeight[row] > 0) {
+                        order[position] = row;
+                        position++;
+                    }
+                }
+                sortedIndex[column] = order;
+            }
+        }
+
+        if (ownStatistics) {
+            labelMean = (classes == null) ? labelSum / totalWeight : 0;
+            histogramSplitter = (base.histogramSplitter != null) ? new HistogramSplitter(this) : null;
+        } else {
+            labelMean = base.labelMean;
+            histogramSplitter = base.histogramSplitter;
+        }
+    }
+
+    /****
+	 * Method: candidateCount
+	 * Description: how many attributes each node's split search scores - options.attributesPerNode, or all of them
+	 * when that is 0 or too large
+	****/
+    int candidateCount() {
+        int columns = data.attributes.length;
+        int sample = options.attributesPerNode;
+        return (sample <= 0 || sample > columns) ? columns : sample;
+    }
+
+    /****
+	 * Method: partition
+	 * Description: reorders the slice [start, end) so the rows of child c occupy start + runStart[c] onwards. 
+	 * The child of each row is read from rowChild. The partition is stable, so presorted columns stay sorted
+	****/
+    void partition(int start, int end, int[] runStart) {
+        distribute(rowIndex, start, end, runStart);
+        for (int column = 0; column < sortedIndex.length; column++) {
+            if (sortedIndex[column] != null) {
+                distribute(sortedIndex[column], start, end, runStart);
+            }
+        }
+    }
+
+    private void distribute(int[] rows, int start, int end, int[] runStart) {
+        int[] nextPosition = runStart.clone();
+        for (int i = start; i < end; i++) {
+            int child = rowChild[rows[i]];
+            partitionBuffer[start + nextPosition[child]] = rows[i];
+            nextPosition[child]++;
+        }
+        System.arraycopy(partitionBuffer, start, rows, start, end - start);
+    }
+
+    /****
+	 * Method: sortByValue
+	 * Description: stable merge sort of rows[from, to) by values[row]. Uses buffer[from, to) as scratch space
+	****/
+    private static void sortByValue(int[] rows, int[] buffer, int from, int to, double[] values) {
+        if (to - from < 16) { // insertion sort for short runs
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && values[rows[j]] > values[row]) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        sortByValue(rows, buffer, from, middle, values);
+        sortByValue(rows, buffer, middle, to, values);
+        if (values[rows[middle - 1]] <= values[rows[middle]]) {
+            return; // halves already in order
+        }
+
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && values[buffer[left]] <= values[buffer[right]])) {
+                rows[i] = buffer[left];
+                left++;
+            } else {
+                rows[i] = buffer[right];
+                right++;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/****
+ * Class: TreeEvents
+ * Description: Java Flight Recorder events for tree building and scoring, and cumulative counters. Record them with
+ * java -XX:StartFlightRecording=filename=train.jfr ... and read them with jfr print --categories "Decision Trees" or
+ * JDK Mission Control. Events that aren't enabled cost a flag check, and the counters are LongAdders so parallel
+ * training threads don't contend on them. The counters are also emitted as a periodic event every second
+****/
+public class TreeEvents {
+    static final LongAdder nodesCreated = new LongAdder();
+    static final LongAdder rowsScanned = new LongAdder(); // row x attribute values read by node statistics, split search and histogram builds
+    static final LongAdder sortsPerformed = new LongAdder(); // full column or label sorts - presorting, dictionary encoding and histogram binning
+    static final LongAdder nodeBytesAllocated = new LongAdder(); // estimated bytes of per-node statistics and histograms
+
+    static {
+        FlightRecorder.addPeriodicEvent(CountersEvent.class, () -> {
+            CountersEvent event = new CountersEvent();
+            event.nodesCreated = nodesCreated.sum();
+            event.rowsScanned = rowsScanned.sum();
+            event.sortsPerformed = sortsPerformed.sum();
+            event.nodeBytesAllocated = nodeBytesAllocated.sum();
+            event.commit();
+        });
+    }
+
+    @Name("decisiontrees.SplitSearch")
+    @Label("Split Search")
+    @Category({"Decision Trees", "Training"})
+    @Description("Choosing the attribute a node splits on")
+    @StackTrace(false)
+    static class SplitSearchEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Rows")
+        int rows;
+        @Label("Attributes Evaluated")
+        int attributesEvaluated;
+        @Label("Chosen Attribute")
+        @Description("-1 if no split improves the node and it becomes a leaf")
+        int chosenAttribute;
+        @Label("Histogram")
+        boolean histogram;
+    }
+
+    @Name("decisiontrees.SplitPartition")
+    @Label("Split Partition")
+    @Category({"Decision Trees", "Training"})
+    @Description("Partitioning a node's rows between its children and computing their statistics")
+    @StackTrace(false)
+    static class SplitPartitionEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Rows")
+        int rows;
+        @Label("Attribute")
+        int attribute;
+        @Label("Categorical")
+        boolean categorical;
+        @Label("Children")
+        int children;
+    }
+
+    @Name("decisiontrees.Prune")
+    @Label("Prune")
+    @Category({"Decision Trees", "Pruning"})
+    @Description("One reduced error pruning pass over a tree")
+    @StackTrace(false)
+    static class PruneEvent extends Event {
+        @Label("Prune Rows")
+        int pruneRows;
+    }
+
+    @Name("decisiontrees.PruneDecision")
+    @Label("Prune Decision")
+    @Category({"Decision Trees", "Pruning"})
+    @Description("Whether one internal node was pruned, from the prune rows reaching it")
+    @StackTrace(false)
+    static class PruneDecisionEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Prune Rows")
+        int rows;
+        @Label("Correct As Leaf")
+        int correctAsLeaf;
+        @Label("Correct As Subtree")
+        int correctAsSubtree;
+        @Label("Pruned")
+        boolean pruned;
+    }
+
+    @Name("decisiontrees.BatchScoring")
+    @Label("Batch Scoring")
+    @Category({"Decision Trees", "Scoring"})
+    @Description("One batch predict call on a compiled tree or a mapped model file")
+    @StackTrace(false)
+    static class BatchScoringEvent extends Event {
+        @Label("Rows")
+        int rows;
+        @Label("Tree Nodes")
+        int nodes;
+        @Label("Source")
+        String source;
+    }
+
+    @Name("decisiontrees.Counters")
+    @Label("Tree Building Counters")
+    @Category({"Decision Trees", "Training"})
+    @Description("Totals since the JVM started")
+    @Period("1 s")
+    @StackTrace(false)
+    static class CountersEvent extends Event {
+        @Label("Nodes Created")
+        long nodesCreated;
+        @Label("Rows Scanned")
+        long rowsScanned;
+        @Label("Sorts Performed")
+        long sortsPerformed;
+        @Label("Node Bytes Allocated")
+        @DataAmount
+        long nodeBytesAllocated;
+    }
+
+    /****
+	 * Method: arrayBytes
+	 * Description: estimated heap size of an array - a 16 byte header plus the elements, rounded up to 8 bytes
+	****/
+    static long arrayBytes(int length, int elementBytes) {
+        return (16 + (long) length * elementBytes + 7) / 8 * 8;
+    }
+
+    /****
+	 * Method: summary
+	 * Description: the counters as one line, for printing at the end of a run
+	****/
+    static String summary() {
+        return "nodes created=" + nodesCreated.sum() + " rows scanned=" + rowsScanned.sum() + " sorts=" + sortsPerformed.sum()
+                + " node bytes=" + nodeBytesAllocated.sum();
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.concurrent.ForkJoinPool;
+
+/****
+ * Class: TreeOptions
+ * Description: settings used while growing a tree. The defaults build a tree serially from the presorted columns
+****/
+public class TreeOptions {
+    double errorThreshold = 0; // early stopping MSE for regression datasets
+    boolean histogram = false; // find splits from binned attribute histograms instead of presorted rows
+    ForkJoinPool pool = null; // builds sibling subtrees in parallel on this pool - null builds the whole tree serially
+    int parallelCutoff = 5000; // nodes with fewer rows than this are built serially by the task that reached them
+    int featureParallelCutoff = 50000; // nodes with at least this many rows score their attributes in parallel on the pool
+    int attributesPerNode = 0; // each node scores this many randomly chosen attributes - 0 scores all of them
+    long seed = 0; // seeds the attribute choice at each node
+    long histogramBudget = 64L << 20; // out-of-core training - most bytes of node histograms held during one pass over the file
+    int gracePeriod = 200; // online training - rows a leaf sees between checks for a split
+    double splitConfidence = 1e-7; // online training - chance the Hoeffding bound allows of picking the wrong attribute
+    double tieThreshold = 0.05; // online training - split on the best attribute once the bound is below this, even if the runner up is as good
+    boolean bestFirst = false; // split the leaf whose split removes the most impurity next, within the limits below, instead of growing depth first
+    int maxLeaves = 0; // best first - most leaves in the tree, 0 for no limit
+    double minGain = 0; // splits removing less impurity than this (weight times entropy or MSE reduction) are not made - 0 allows every split
+    long timeLimitMillis = 0; // best first - wall-clock time allowed for growing the tree, 0 for no limit
+
+    /****
+	 * Method: copy
+	 * Description: a copy of these options, for example to give each tree of a forest its own seed
+	****/
+    TreeOptions copy() {
+        TreeOptions options = new TreeOptions();
+        options.errorThreshold = errorThreshold;
+        options.histogram = histogram;
+        options.pool = pool;
+        options.parallelCutoff = parallelCutoff;
+        options.featureParallelCutoff = featureParallelCutoff;
+        options.attributesPerNode = attributesPerNode;
+        options.seed = seed;
+        options.histogramBudget = histogramBudget;
+        options.gracePeriod = gracePeriod;
+        options.splitConfidence = splitConfidence;
+        options.tieThreshold = tieThreshold;
+        options.bestFirst = bestFirst;
+        options.maxLeaves = maxLeaves;
+        options.minGain = minGain;
+        options.timeLimitMillis = timeLimitMillis;
+        return options;
+    }
+}